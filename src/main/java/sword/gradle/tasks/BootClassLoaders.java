@@ -0,0 +1,140 @@
+package sword.gradle.tasks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class loaders for the boot classpath, shared by all users within the JVM that request
+ * a boot classpath with the same contents.
+ *
+ * Each user acquires a {@link Lease} and must close it when it is done.
+ * The class loader is closed as soon as its last lease is closed, releasing its jar files,
+ * and allowing the classes it loaded to be unloaded.
+ */
+final class BootClassLoaders {
+
+    // java.util.logging is used, as this is also used out of Gradle. Gradle forwards it to its own logging
+    private static final Logger LOGGER = Logger.getLogger(BootClassLoaders.class.getName());
+
+    private static final class CountingClassLoader extends URLClassLoader {
+        final AtomicInteger loadedClassCount = new AtomicInteger();
+
+        CountingClassLoader(URL[] urls) {
+            super(urls);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final Class<?> cls = super.findClass(name);
+            loadedClassCount.incrementAndGet();
+            return cls;
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final CountingClassLoader loader;
+        final long initialMetaspace;
+        int leaseCount;
+
+        Entry(String key, CountingClassLoader loader, long initialMetaspace) {
+            this.key = key;
+            this.loader = loader;
+            this.initialMetaspace = initialMetaspace;
+        }
+    }
+
+    /**
+     * Grants the use of a shared class loader until closed.
+     */
+    static final class Lease implements Closeable {
+        private final Entry mEntry;
+        private boolean mClosed;
+
+        private Lease(Entry entry) {
+            mEntry = entry;
+        }
+
+        ClassLoader getClassLoader() {
+            return mEntry.loader;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (BootClassLoaders.class) {
+                if (!mClosed) {
+                    mClosed = true;
+                    release(mEntry);
+                }
+            }
+        }
+    }
+
+    private static final HashMap<String, Entry> sEntries = new HashMap<>();
+
+    private static URL toUrl(File file) {
+        try {
+            return file.toURI().toURL();
+        }
+        catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the Metaspace currently used in this JVM, or -1 if it cannot be known.
+     */
+    private static long usedMetaspace() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+
+        return -1;
+    }
+
+    static synchronized Lease acquire(List<File> bootClassPath) throws IOException {
+        final String key = BootClassPathIndex.computeKey(bootClassPath);
+        Entry entry = sEntries.get(key);
+        if (entry == null) {
+            final URL[] urls = new URL[bootClassPath.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = toUrl(bootClassPath.get(i));
+            }
+
+            entry = new Entry(key, new CountingClassLoader(urls), usedMetaspace());
+            sEntries.put(key, entry);
+        }
+
+        entry.leaseCount++;
+        return new Lease(entry);
+    }
+
+    private static void release(Entry entry) throws IOException {
+        if (--entry.leaseCount == 0) {
+            sEntries.remove(entry.key);
+            final long finalMetaspace = usedMetaspace();
+            entry.loader.close();
+
+            if (LOGGER.isLoggable(Level.INFO)) {
+                final String metaspace = (entry.initialMetaspace >= 0 && finalMetaspace >= 0)? ((finalMetaspace - entry.initialMetaspace) / 1024) + " KiB" : "unknown";
+                LOGGER.info("Boot classpath class loader closed after loading " + entry.loader.loadedClassCount.get() + " classes. Metaspace growth while in use: " + metaspace);
+            }
+        }
+    }
+
+    private BootClassLoaders() {
+    }
+}
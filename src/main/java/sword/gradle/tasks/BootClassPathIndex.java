@@ -0,0 +1,243 @@
+package sword.gradle.tasks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Type hierarchy table for the classes in the boot classpath.
+ *
+ * Supertypes are read directly from the class files, without loading them,
+ * and only when they are requested for the first time. The resulting table is
+ * persisted in the given cache directory, keyed by the hash of the jar files,
+ * so that later builds against the same SDK can answer from the table without
+ * opening the jars at all.
+ */
+final class BootClassPathIndex implements Closeable {
+
+    private static final String MISSING_MARK = "!";
+    private static final String NO_SUPER_CLASS_MARK = "-";
+
+    private final List<File> mBootClassPath;
+    private final File mTableFile;
+    private final HashMap<String, List<String>> mSupertypes = new HashMap<>();
+    private final ZipFile[] mOpenJars;
+
+    private boolean mModified;
+
+    BootClassPathIndex(List<File> bootClassPath, File cacheDir) throws IOException {
+        mBootClassPath = new ArrayList<>(bootClassPath);
+        mOpenJars = new ZipFile[mBootClassPath.size()];
+        mTableFile = new File(cacheDir, computeKey(mBootClassPath) + ".txt");
+        if (mTableFile.isFile()) {
+            readTable();
+        }
+    }
+
+    /**
+     * Returns a key that only changes when the contents of any jar in the given boot classpath change.
+     */
+    static String computeKey(List<File> bootClassPath) throws IOException {
+        final ArrayList<String> entryKeys = new ArrayList<>(bootClassPath.size());
+        for (File file : bootClassPath) {
+            // Class directories are mutable, and then only their path is taken into account.
+            // The table is never persisted if any of them is present.
+            entryKeys.add(isJar(file)? ContentHash.ofFile(file) : file.getAbsolutePath());
+        }
+
+        return ContentHash.ofStrings(entryKeys);
+    }
+
+    private static boolean isJar(File file) {
+        return file.toString().endsWith(".jar");
+    }
+
+    static byte[] readFully(InputStream inStream) throws IOException {
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inStream.read(buffer)) != -1) {
+            byteStream.write(buffer, 0, count);
+        }
+
+        return byteStream.toByteArray();
+    }
+
+    private void readTable() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mTableFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+                if (parts.length >= 2) {
+                    if (MISSING_MARK.equals(parts[1])) {
+                        mSupertypes.put(parts[0], null);
+                    }
+                    else {
+                        final List<String> supertypes = new ArrayList<>(parts.length - 1);
+                        if (!NO_SUPER_CLASS_MARK.equals(parts[1])) {
+                            supertypes.add(parts[1]);
+                        }
+
+                        supertypes.addAll(Arrays.asList(parts).subList(2, parts.length));
+                        mSupertypes.put(parts[0], supertypes);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeTable() throws IOException {
+        final File parent = mTableFile.getParentFile();
+        parent.mkdirs();
+
+        final File tempFile = File.createTempFile(mTableFile.getName(), ".tmp", parent);
+        try {
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(Files.newOutputStream(tempFile.toPath()), StandardCharsets.UTF_8))) {
+                for (Map.Entry<String, List<String>> entry : mSupertypes.entrySet()) {
+                    final StringBuilder sb = new StringBuilder(entry.getKey());
+                    final List<String> supertypes = entry.getValue();
+                    if (supertypes == null) {
+                        sb.append(' ').append(MISSING_MARK);
+                    }
+                    else {
+                        // The super class is always the first one, except for java.lang.Object, that has none
+                        if (supertypes.isEmpty()) {
+                            sb.append(' ').append(NO_SUPER_CLASS_MARK);
+                        }
+
+                        for (String supertype : supertypes) {
+                            sb.append(' ').append(supertype);
+                        }
+                    }
+                    writer.println(sb);
+                }
+            }
+
+            Files.move(tempFile.toPath(), mTableFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    private byte[] findClassFile(String className) throws IOException {
+        final String entryName = className.replace('.', '/') + ".class";
+        final int entryCount = mBootClassPath.size();
+        for (int index = 0; index < entryCount; index++) {
+            final File file = mBootClassPath.get(index);
+            if (isJar(file)) {
+                if (mOpenJars[index] == null) {
+                    if (!file.isFile()) {
+                        continue;
+                    }
+
+                    // Opening the ZipFile reads the central directory once, entries are then located without scanning the jar
+                    mOpenJars[index] = new ZipFile(file);
+                }
+
+                final ZipEntry entry = mOpenJars[index].getEntry(entryName);
+                if (entry != null) {
+                    try (InputStream inStream = mOpenJars[index].getInputStream(entry)) {
+                        return readFully(inStream);
+                    }
+                }
+            }
+            else {
+                final File classFile = new File(file, entryName);
+                if (classFile.isFile()) {
+                    try (InputStream inStream = new FileInputStream(classFile)) {
+                        return readFully(inStream);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private boolean hasClassDirectories() {
+        for (File file : mBootClassPath) {
+            if (!isJar(file)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the direct super class and interfaces of the given class,
+     * or null if the class cannot be found in the boot classpath.
+     */
+    synchronized List<String> supertypes(String className) throws IOException {
+        if (mSupertypes.containsKey(className)) {
+            return mSupertypes.get(className);
+        }
+
+        final byte[] classFile = findClassFile(className);
+        final List<String> result;
+        if (classFile == null) {
+            result = null;
+        }
+        else {
+            final ClassFileReader.ClassHeader header = ClassFileReader.readHeader(classFile);
+            if (header.superClassName == null && header.interfaceNames.isEmpty()) {
+                result = Collections.emptyList();
+            }
+            else {
+                result = new ArrayList<>(header.interfaceNames.size() + 1);
+                if (header.superClassName != null) {
+                    result.add(header.superClassName);
+                }
+                result.addAll(header.interfaceNames);
+            }
+        }
+
+        mSupertypes.put(className, result);
+        mModified = true;
+        return result;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException exception = null;
+        for (int index = 0; index < mOpenJars.length; index++) {
+            if (mOpenJars[index] != null) {
+                try {
+                    mOpenJars[index].close();
+                }
+                catch (IOException e) {
+                    exception = e;
+                }
+                mOpenJars[index] = null;
+            }
+        }
+
+        if (mModified && !hasClassDirectories()) {
+            writeTable();
+            mModified = false;
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
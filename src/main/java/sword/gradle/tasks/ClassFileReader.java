@@ -0,0 +1,219 @@
+package sword.gradle.tasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimal class file parser that only extracts the type hierarchy of a class,
+ * and the methods of interfaces, without defining it in any class loader.
+ */
+final class ClassFileReader {
+
+    static final int ACC_INTERFACE = 0x0200;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    static final class ClassHeader {
+        final int accessFlags;
+        final String className;
+        final String superClassName;
+        final List<String> interfaceNames;
+
+        ClassHeader(int accessFlags, String className, String superClassName, List<String> interfaceNames) {
+            this.accessFlags = accessFlags;
+            this.className = className;
+            this.superClassName = superClassName;
+            this.interfaceNames = interfaceNames;
+        }
+
+        boolean isInterface() {
+            return (accessFlags & ACC_INTERFACE) != 0;
+        }
+    }
+
+    private static String toBinaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    private static String className(String[] utf8Entries, int[] classNameIndexes, int index) {
+        return toBinaryName(utf8Entries[classNameIndexes[index]]);
+    }
+
+    private static ClassHeader readHeader(DataInputStream in, String[] utf8Entries, int[] classNameIndexes) throws IOException {
+        final int accessFlags = in.readUnsignedShort();
+        final String className = className(utf8Entries, classNameIndexes, in.readUnsignedShort());
+        final int superClassIndex = in.readUnsignedShort();
+        final String superClassName = (superClassIndex == 0)? null : className(utf8Entries, classNameIndexes, superClassIndex);
+
+        final int interfaceCount = in.readUnsignedShort();
+        final List<String> interfaceNames;
+        if (interfaceCount == 0) {
+            interfaceNames = Collections.emptyList();
+        }
+        else {
+            interfaceNames = new ArrayList<>(interfaceCount);
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaceNames.add(className(utf8Entries, classNameIndexes, in.readUnsignedShort()));
+            }
+        }
+
+        return new ClassHeader(accessFlags, className, superClassName, interfaceNames);
+    }
+
+    /**
+     * Reads the constant pool of the given class file, leaving the stream just after it.
+     * Only UTF-8 entries and class references are kept, as nothing else is read from it.
+     *
+     * @return The UTF-8 entries, and the index of the UTF-8 entry for the name of each class reference in classNameIndexes.
+     */
+    private static String[] readConstantPool(DataInputStream in, int constantPoolCount, int[] classNameIndexes) throws IOException {
+        final String[] utf8Entries = new String[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8Entries[i] = in.readUTF();
+                    break;
+
+                case CONSTANT_CLASS:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    i++;
+                    break;
+
+                default:
+                    throw new IOException("Unexpected constant pool tag " + tag);
+            }
+        }
+
+        return utf8Entries;
+    }
+
+    private static DataInputStream open(byte[] classFile) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Invalid class file magic number");
+        }
+
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+        return in;
+    }
+
+    /**
+     * Reads the header of the given class file.
+     * Names in the result are in the same format returned by {@link Class#getName()}.
+     * The super class name is null only for java.lang.Object.
+     */
+    static ClassHeader readHeader(byte[] classFile) throws IOException {
+        final DataInputStream in = open(classFile);
+        final int constantPoolCount = in.readUnsignedShort();
+        final int[] classNameIndexes = new int[constantPoolCount];
+        final String[] utf8Entries = readConstantPool(in, constantPoolCount, classNameIndexes);
+        return readHeader(in, utf8Entries, classNameIndexes);
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        final int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    /**
+     * Returns a description of the given class file that only includes what can change the interfaces
+     * a layout wrapper implements: the class name and its supertypes, and, for interfaces, the name and
+     * descriptor of all methods that {@link Class#getDeclaredMethods()} returns, except the default ones.
+     * Method bodies, fields and any other attribute are ignored.
+     */
+    static String readAbi(byte[] classFile) throws IOException {
+        final DataInputStream in = open(classFile);
+        final int constantPoolCount = in.readUnsignedShort();
+        final int[] classNameIndexes = new int[constantPoolCount];
+        final String[] utf8Entries = readConstantPool(in, constantPoolCount, classNameIndexes);
+        final ClassHeader header = readHeader(in, utf8Entries, classNameIndexes);
+
+        final StringBuilder sb = new StringBuilder(header.className);
+        sb.append(':').append(header.superClassName).append(':').append(header.interfaceNames);
+        if (header.isInterface()) {
+            final int fieldCount = in.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i++) {
+                in.skipBytes(6);
+                skipAttributes(in);
+            }
+
+            final ArrayList<String> methods = new ArrayList<>();
+            final int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++) {
+                final int accessFlags = in.readUnsignedShort();
+                final String name = utf8Entries[in.readUnsignedShort()];
+                final String descriptor = utf8Entries[in.readUnsignedShort()];
+                skipAttributes(in);
+
+                final boolean isDefault = (accessFlags & (ACC_PUBLIC | ACC_STATIC | ACC_ABSTRACT)) == ACC_PUBLIC;
+                if (!isDefault && !"<clinit>".equals(name)) {
+                    methods.add(name + descriptor);
+                }
+            }
+
+            Collections.sort(methods);
+            sb.append(':').append(methods);
+        }
+
+        return sb.toString();
+    }
+
+    private ClassFileReader() {
+    }
+}
@@ -0,0 +1,100 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 hashes, expressed as hexadecimal strings, used to key any content cached on disk.
+ */
+final class ContentHash {
+
+    /**
+     * Hash of a file, and the state of the file when it was computed.
+     */
+    private static final class FileHash {
+        final long length;
+        final long lastModified;
+        final String hash;
+
+        FileHash(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Last hash computed for each file, keyed by its absolute path.
+     * Only one entry is kept per file, replaced whenever the file changes.
+     */
+    private static final Map<String, FileHash> sFileHashes = new ConcurrentHashMap<>();
+
+    static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0x0F, 16));
+            sb.append(Character.forDigit(b & 0x0F, 16));
+        }
+
+        return sb.toString();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    /**
+     * Returns the hash of the given file contents.
+     * Hashes are memoized for the lifetime of the JVM, assuming that a file keeping its size and modification time has not changed.
+     */
+    static String ofFile(File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final FileHash memoized = sFileHashes.get(path);
+        if (memoized != null && memoized.length == length && memoized.lastModified == lastModified) {
+            return memoized.hash;
+        }
+
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[65536];
+        try (InputStream inStream = new FileInputStream(file)) {
+            int count;
+            while ((count = inStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+
+        final String hash = toHex(digest.digest());
+        sFileHashes.put(path, new FileHash(length, lastModified, hash));
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the given sequence of strings, where each one is terminated by a zero byte.
+     */
+    static String ofStrings(Iterable<String> parts) {
+        final MessageDigest digest = newDigest();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private ContentHash() {
+    }
+}
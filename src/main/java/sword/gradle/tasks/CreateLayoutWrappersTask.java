@@ -2,47 +2,30 @@ package sword.gradle.tasks;
 
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
-import org.xml.sax.SAXException;
+import org.gradle.api.provider.Provider;
 
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
-import org.xml.sax.Attributes;
-import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
-import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import static sword.gradle.tasks.CaseUtils.fromSnakeToPascalCase;
-import static sword.gradle.tasks.StringResourceUtils.obtainKnownPlaceholderStrings;
+import java.util.Collections;
 
 public abstract class CreateLayoutWrappersTask extends DefaultTask {
 
-    private final HashMap<String, String> mImplicitTagNames = new HashMap<>();
-
     @Input
     public abstract Property<String> getPackageName();
 
@@ -61,357 +44,186 @@ public abstract class CreateLayoutWrappersTask extends DefaultTask {
     @Input
     public abstract MapProperty<String, String> getKnownCasts();
 
-    @InputDirectory
+    /**
+     * Directory with the compiled interfaces that wrappers may implement. It is not an input by itself,
+     * as only the signatures of its classes are taken into account, through {@link #getInterfacesAbi()}.
+     */
+    @Internal
     public abstract DirectoryProperty getInterfacesClasspath();
 
-    @InputDirectory
-    public abstract DirectoryProperty getResourcesDir();
-
-    @OutputDirectory
-    public abstract DirectoryProperty getOutputDir();
-
-    public CreateLayoutWrappersTask() {
-        mImplicitTagNames.put("AutoCompleteTextView", "android.widget.AutoCompleteTextView");
-        mImplicitTagNames.put("Button", "android.widget.Button");
-        mImplicitTagNames.put("CheckBox", "android.widget.CheckBox");
-        mImplicitTagNames.put("DatePicker", "android.widget.DatePicker");
-        mImplicitTagNames.put("DigitalClock", "android.widget.DigitalClock");
-        mImplicitTagNames.put("EditText", "android.widget.EditText");
-        mImplicitTagNames.put("ExpandableListView", "android.widget.ExpandableListView");
-        mImplicitTagNames.put("FrameLayout", "android.widget.FrameLayout");
-        mImplicitTagNames.put("GridView", "android.widget.GridView");
-        mImplicitTagNames.put("HorizontalScrollView", "android.widget.HorizontalScrollView");
-        mImplicitTagNames.put("ImageButton", "android.widget.ImageButton");
-        mImplicitTagNames.put("ImageView", "android.widget.ImageView");
-        mImplicitTagNames.put("LinearLayout", "android.widget.LinearLayout");
-        mImplicitTagNames.put("ListView", "android.widget.ListView");
-        mImplicitTagNames.put("ProgressBar", "android.widget.ProgressBar");
-        mImplicitTagNames.put("RadioButton", "android.widget.RadioButton");
-        mImplicitTagNames.put("RelativeLayout", "android.widget.RelativeLayout");
-        mImplicitTagNames.put("ScrollView", "android.widget.ScrollView");
-        mImplicitTagNames.put("SeekBar", "android.widget.SeekBar");
-        mImplicitTagNames.put("Spinner", "android.widget.Spinner");
-        mImplicitTagNames.put("SurfaceView", "android.view.SurfaceView");
-        mImplicitTagNames.put("TextView", "android.widget.TextView");
-        mImplicitTagNames.put("TimePicker", "android.widget.TimePicker");
-        mImplicitTagNames.put("VideoView", "android.widget.VideoView");
-        mImplicitTagNames.put("View", "android.view.View");
-        mImplicitTagNames.put("WebView", "android.webkit.WebView");
-    }
-
-    private interface Type {
-    }
-
-    private static final class ViewType implements Type {
-        final String typeName;
-
-        ViewType(String typeName) {
-            this.typeName = typeName;
-        }
-    }
-
-    private static final class LayoutType implements Type {
-        final String layoutName;
-
-        LayoutType(String layoutName) {
-            this.layoutName = layoutName;
-        }
-    }
-
-    private static final class ParserHandler extends DefaultHandler {
-
-        final String fileName;
-        final Set<String> knownPlaceholderStrings;
-
-        final HashMap<String, Type> foundIdsAndTypes = new HashMap<>();
-        final HashMap<String, String> idsAndWrappers = new HashMap<>();
-        final HashSet<String> conflictingIds = new HashSet<>();
-        final HashSet<String> foundLayouts = new HashSet<>();
-        final HashSet<String> foundMultipleTimesLayout = new HashSet<>();
-
-        String rootTag;
-        LinkedList<String> idHierarchy = new LinkedList<>();
-
-        ParserHandler(String fileName, Set<String> knownPlaceholderStrings) {
-            this.fileName = fileName;
-            this.knownPlaceholderStrings = knownPlaceholderStrings;
-        }
-
-        private void assertValidId(String id) {
-            final int length = id.length();
-            if (id.charAt(0) < 'a' || id.charAt(0) > 'z') {
-                final String message = "View id must start with lower case, but '" + id + "' in " + fileName + " does not.";
-                System.err.println(message);
-                throw new RuntimeException(message);
+    /**
+     * Hash of the interfaces classpath that only changes when the interfaces a wrapper may implement can change.
+     * Changes in method bodies, or in the members of classes that are not interfaces, keep this task up to date.
+     */
+    @Input
+    public Provider<String> getInterfacesAbi() {
+        return getInterfacesClasspath().map(dir -> {
+            try {
+                return InterfaceAnalysis.abiFingerprint(dir.getAsFile());
             }
-
-            for (int i = 1; i < length; i++) {
-                final char ch = id.charAt(i);
-                if ((ch < 'a' || ch > 'z') && (ch < 'A' || ch > 'Z') && (ch < '0' || ch > '9')) {
-                    final String message = "View id only can contain characters from a-z, A-Z or 0-9. Id '" + id + "' in " + fileName + " does not follow the rule.";
-                    System.err.println(message);
-                    throw new RuntimeException(message);
-                }
+            catch (IOException e) {
+                throw new UnsupportedOperationException("Unable to read the interfaces classpath", e);
             }
-        }
+        });
+    }
 
-        private void register(String id, Type value) {
-            assertValidId(id);
-            if (!conflictingIds.contains(id)) {
-                if (foundIdsAndTypes.containsKey(id)) {
-                    conflictingIds.add(id);
-                    foundIdsAndTypes.remove(id);
-                    idsAndWrappers.remove(id);
-                }
-                else {
-                    foundIdsAndTypes.put(id, value);
-                    String wrappingId = null;
-                    if (idHierarchy.size() >= 2) {
-                        for (String wid : idHierarchy) {
-                            if (wid != null) {
-                                wrappingId = wid;
-                                break;
-                            }
-                        }
-                    }
-
-                    if (wrappingId != null) {
-                        idsAndWrappers.put(id, wrappingId);
-                    }
-                }
-            }
-        }
+    /**
+     * Resource directory whose layouts are wrapped. Either this or {@link #getResourcesDirs()} must be set.
+     */
+    @InputDirectory
+    @Optional
+    public abstract DirectoryProperty getResourcesDir();
 
-        @Override
-        public void startElement(String uri, String lName, String qName, Attributes attr) {
-            if (rootTag == null) {
-                rootTag = qName;
-            }
+    /**
+     * Resource directories whose layouts are wrapped, like the ones of all source sets of a variant, from lower to higher priority.
+     * They are merged as Android merges source set overlays: a layout in a later directory replaces the one with the same name
+     * in the same folder of earlier directories, and the same applies to strings. Layouts of directories shared among variants
+     * are only parsed once when {@link #getSharedAnalysis()} is set.
+     */
+    @InputFiles
+    @Optional
+    public abstract ConfigurableFileCollection getResourcesDirs();
 
-            if ("fragment".equals(qName)) {
-                // Let's ignore it for now
-                idHierarchy.addFirst(null);
-            }
-            else if ("include".equals(qName)) {
-                String id = null;
-                String layout = null;
-                final int attrCount = (attr != null) ? attr.getLength() : 0;
-                for (int attrIndex = 0; attrIndex < attrCount && !(id != null && layout != null); attrIndex++) {
-                    if ("android:id".equals(attr.getQName(attrIndex))) {
-                        final String value = attr.getValue(attrIndex);
-                        if (value.startsWith("@+id/")) {
-                            id = value.substring(5);
-                        }
-                        else if (value.startsWith("@id/")) {
-                            id = value.substring(4);
-                        }
-                    }
-                    else if ("layout".equals(attr.getQName(attrIndex))) {
-                        final String value = attr.getValue(attrIndex);
-                        if (value.startsWith("@layout/")) {
-                            layout = value.substring(8);
-                        }
-                    }
-                }
-
-                if (layout != null) {
-                    if (foundLayouts.contains(layout)) {
-                        foundMultipleTimesLayout.add(layout);
-                    }
-                    else {
-                        foundLayouts.add(layout);
-                    }
-
-                    if (id != null) {
-                        register(id, new LayoutType(layout));
-                    }
-                }
-                idHierarchy.addFirst(id);
-            }
-            else {
-                final int attrCount = (attr != null) ? attr.getLength() : 0;
-                String id = null;
-                for (int attrIndex = 0; attrIndex < attrCount; attrIndex++) {
-                    final String value = attr.getValue(attrIndex);
-                    if (value != null && value.startsWith("@string/")) {
-                        final String stringName = value.substring(8);
-                        if (knownPlaceholderStrings.contains(stringName)) {
-                            throw new RuntimeException("Invalid string reference " + value + " in " + fileName + ". String requires placeholders.");
-                        }
-                    }
-
-                    if ("android:id".equals(attr.getQName(attrIndex))) {
-                        if (value.startsWith("@+id/")) {
-                            id = value.substring(5);
-                            register(id, new ViewType(qName));
-                        }
-                        else if (value.startsWith("@id/")) {
-                            id = value.substring(4);
-                            register(id, new ViewType(qName));
-                        }
-                    }
-                }
-                idHierarchy.addFirst(id);
-            }
-        }
+    /**
+     * Directory where a Java file is written for each wrapper. Not required if {@link #getOutputSrcJar()} is set.
+     */
+    @OutputDirectory
+    @Optional
+    public abstract DirectoryProperty getOutputDir();
 
-        @Override
-        public void endElement(String uri, String localName, String qName) {
-            idHierarchy.removeFirst();
-        }
-    }
+    /**
+     * Optional srcjar file where all wrappers are written instead of the output directory.
+     * Its entries are sorted and have a fixed timestamp, and the file is not rewritten if none of them changed.
+     */
+    @OutputFile
+    @Optional
+    public abstract RegularFileProperty getOutputSrcJar();
 
-    private static URL defineClassDirUrl(String directoryPath) {
-        try {
-            return new URL("file://" + directoryPath + "/");
-        }
-        catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
-    }
+    /**
+     * Directory where the type hierarchy tables for the boot classpath are persisted.
+     * By default, this is a shared folder within the Gradle user home, so that all
+     * projects built against the same SDK can reuse them.
+     */
+    @Internal
+    public abstract DirectoryProperty getBootClassPathIndexDir();
 
-    private static URL defineJarUrl(String jarFilePath) {
-        try {
-            return new URL("jar", "", "file:" + jarFilePath + "!/");
-        }
-        catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
-    }
+    /**
+     * Resource directories from other modules whose layouts can be included from the layouts of this module.
+     * Only their default layout folder is taken into account, and no wrapper is generated for them.
+     */
+    @InputFiles
+    @Optional
+    public abstract ConfigurableFileCollection getIncludedResourcesDirs();
 
-    private String tagNameToType(String tagName) {
-        final String value = mImplicitTagNames.get(tagName);
-        return (value == null)? tagName : value;
-    }
+    /**
+     * Library dependencies whose layouts can be included from the layouts of this module, in the same way as
+     * {@link #getIncludedResourcesDirs()}. Each entry can be an AAR file, an exploded AAR or a resource directory.
+     * AAR files are read without extracting them. Layouts in earlier entries take precedence.
+     */
+    @Classpath
+    @Optional
+    public abstract ConfigurableFileCollection getDependencyResources();
 
-    private String resolve(Map<String, ParserHandler> handlers, String handlerId, Map<String, String> typesResult, Map<String, String> wrapResult, String nowWrapping, Set<String> conflictingIds) {
-        final ParserHandler handler = handlers.get(handlerId);
-        final HashSet<String> includedLayouts = new HashSet<>();
-        for (Map.Entry<String, Type> entry : handler.foundIdsAndTypes.entrySet()) {
-            final String id = entry.getKey();
-            if (entry.getValue() instanceof ViewType) {
-                if (typesResult.containsKey(id)) {
-                    typesResult.remove(id);
-                    wrapResult.remove(id);
-                    conflictingIds.add(id);
-                }
-                else if (!conflictingIds.contains(id)) {
-                    typesResult.put(id, ((ViewType) entry.getValue()).typeName);
-                    final String wrapping = handler.idsAndWrappers.getOrDefault(id, nowWrapping);
-                    if (wrapping != null) {
-                        wrapResult.put(id, wrapping);
-                    }
-                }
-            }
-            else {
-                final String layoutName = ((LayoutType) entry.getValue()).layoutName;
-                includedLayouts.add(layoutName);
-                final String includeType = resolve(handlers, layoutName, typesResult, wrapResult, id, conflictingIds);
-
-                if (typesResult.containsKey(id)) {
-                    typesResult.remove(id);
-                    wrapResult.remove(id);
-                    conflictingIds.add(id);
-                }
-                else if (!conflictingIds.contains(id)) {
-                    typesResult.put(id, includeType);
-                    final String wrapping = handler.idsAndWrappers.getOrDefault(id, nowWrapping);
-                    if (wrapping != null) {
-                        wrapResult.put(id, wrapping);
-                    }
-                }
-            }
-        }
+    /**
+     * Directory where the layouts found in AAR dependencies are indexed. By default, this is a shared folder
+     * within the Gradle user home, so that each dependency version is only indexed once.
+     */
+    @Internal
+    public abstract DirectoryProperty getDependencyLayoutIndexDir();
 
-        for (String layoutName : handler.foundLayouts) {
-            if (!includedLayouts.contains(layoutName)) {
-                resolve(handlers, layoutName, typesResult, wrapResult, nowWrapping, conflictingIds);
-            }
-        }
+    /**
+     * Names of the layouts, without extension, for which a RecyclerView.ViewHolder must be generated
+     * in addition to their wrapper. None by default.
+     */
+    @Input
+    @Optional
+    public abstract ListProperty<String> getViewHolderLayouts();
 
-        return handler.rootTag;
-    }
+    /**
+     * Whether the generated wrappers should include inflateAsync factory methods, inflating the layout
+     * in a background executor and delivering the wrapper through a callback. Disabled by default.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getAsyncInflation();
 
-    private void findInterfaceCandidates(File folder, HashSet<String> candidates, String packageName) {
-        for (String fileName : folder.list()) {
-            final File file = new File(folder, fileName);
-            if (fileName.endsWith(".class") && !file.isDirectory()) {
-                candidates.add(packageName + "." + fileName.substring(0, fileName.length() - 6));
-            }
-            else if (file.isDirectory()) {
-                findInterfaceCandidates(file, candidates, (packageName == null)? fileName : packageName + "." + fileName);
-            }
-        }
-    }
+    /**
+     * Experimental. Whether the generated wrappers should build the view hierarchy in Java code instead of inflating it,
+     * when the layout only uses a supported subset of views and attributes and has no variants.
+     * Any other layout is still inflated. Disabled by default.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getGeneratedViewConstruction();
 
-    private static final class InterfaceInfo {
-        final List<String> extendingInterfaces;
-        final Map<String, String> methodNameAndType;
+    /**
+     * Whether all wrappers should extend a common LayoutWrapper class generated in the same package,
+     * which keeps the root view and looks up the views, instead of repeating that code in each wrapper.
+     * The public methods of the wrappers are the same. Disabled by default.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getSharedBaseClass();
 
-        InterfaceInfo(List<String> extendingInterfaces, Map<String, String> methodNameAndType) {
-            this.extendingInterfaces = extendingInterfaces;
-            this.methodNameAndType = methodNameAndType;
-        }
-    }
+    /**
+     * Optional file where the resolved layouts are written, including the views found through includes and
+     * the interfaces implemented by each wrapper. Other tools can read it through {@link ResolvedLayouts#read(File)}
+     * instead of parsing the layouts again. Not written by default.
+     */
+    @OutputFile
+    @Optional
+    public abstract RegularFileProperty getResolvedLayoutsFile();
 
-    private boolean resolveInterface(String interfaceName, Map<String, InterfaceInfo> interfaceInfo, Map<String, String> result) {
-        final InterfaceInfo info = interfaceInfo.get(interfaceName);
-        for (String extending : info.extendingInterfaces) {
-            if (!interfaceInfo.containsKey(extending) || !resolveInterface(extending, interfaceInfo, result)) {
-                return false;
-            }
-        }
-        result.putAll(info.methodNameAndType);
+    /**
+     * Optional file where the cost of the view hierarchy of each layout is reported, with all its includes expanded.
+     * This includes the number of views, the maximum depth, the weighted LinearLayouts nested within another
+     * weighted one and the number of include expansions. Not written by default.
+     */
+    @OutputFile
+    @Optional
+    public abstract RegularFileProperty getHierarchyReportFile();
 
-        return true;
-    }
+    /**
+     * Maximum values allowed for the hierarchy cost of the layouts. The build fails if any of them is exceeded.
+     * Keys are the metric names: views, depth, nestedWeights or includes, which apply to all layouts,
+     * or a layout name and a metric name joined with a dot, like main_activity.depth, that take precedence
+     * for that layout. No budget by default.
+     */
+    @Input
+    @Optional
+    public abstract MapProperty<String, Integer> getHierarchyBudgets();
 
-    private final HashMap<String, HashSet<String>> mCastable = new HashMap<>();
+    /**
+     * Directory where generated wrappers are cached, in order to reuse them in any other build
+     * with the same layouts, interfaces and options. By default, this is a shared folder within the Gradle user home.
+     */
+    @Internal
+    public abstract DirectoryProperty getOutputCacheDir();
 
-    private boolean canBeCasted(ClassLoader loader, String source, String target) {
-        if (source.equals(target)) {
-            return true;
-        }
-        else if ("java.lang.Object".equals(source)) {
-            return false;
-        }
+    /**
+     * Maximum size in bytes for the output cache directory. The least recently used entries are removed when exceeded.
+     * Setting 0 disables the cache. 64 MiB by default.
+     */
+    @Internal
+    public abstract Property<Long> getOutputCacheMaxSize();
 
-        HashSet<String> castable = mCastable.get(source);
-        if (castable == null) {
-            castable = new HashSet<>();
-            castable.add("java.lang.Object");
+    /**
+     * Optional build service to share the analysis among all modules within the same build.
+     * When not set, the analysis is performed by this task alone.
+     */
+    @Internal
+    public abstract Property<SharedLayoutAnalysisService> getSharedAnalysis();
 
-            final String knownCast = getKnownCasts().get().get(source);
-            if (knownCast != null) {
-                castable.add(knownCast);
-                mCastable.put(source, castable);
-            }
-            else {
-                try {
-                    final Class<?> cls = loader.loadClass(source);
-                    for (Class<?> i : cls.getInterfaces()) {
-                        castable.add(i.getName());
-                    }
-
-                    final Class<?> superClass = cls.getSuperclass();
-                    if (superClass != null) {
-                        castable.add(superClass.getName());
-                    }
-                    mCastable.put(source, castable);
-                }
-                catch (ClassNotFoundException e) {
-                    return false;
-                }
-            }
-        }
+    public CreateLayoutWrappersTask() {
+        final File defaultIndexDir = new File(getProject().getGradle().getGradleUserHomeDir(), "caches/sword-android-tasks/boot-classpath-index");
+        getBootClassPathIndexDir().convention(getProject().getLayout().dir(getProject().provider(() -> defaultIndexDir)));
 
-        for (String newSource : castable) {
-            if (canBeCasted(loader, newSource, target)) {
-                return true;
-            }
-        }
+        final File defaultDependencyIndexDir = new File(getProject().getGradle().getGradleUserHomeDir(), "caches/sword-android-tasks/layout-index");
+        getDependencyLayoutIndexDir().convention(getProject().getLayout().dir(getProject().provider(() -> defaultDependencyIndexDir)));
 
-        return false;
+        final File defaultOutputCacheDir = new File(getProject().getGradle().getGradleUserHomeDir(), "caches/sword-android-tasks/outputs");
+        getOutputCacheDir().convention(getProject().getLayout().dir(getProject().provider(() -> defaultOutputCacheDir)));
+        getOutputCacheMaxSize().convention(64L * 1024 * 1024);
     }
 
     /**
@@ -419,264 +231,38 @@ public abstract class CreateLayoutWrappersTask extends DefaultTask {
      */
     @TaskAction
     public void createLayoutWrappers() {
-        final File interfacesClasspath = getInterfacesClasspath().get().getAsFile();
-        final HashSet<String> interfaceCandidates = new HashSet<>();
-        findInterfaceCandidates(interfacesClasspath, interfaceCandidates, null);
-
-        final ArrayList<URL> urlList = new ArrayList<>();
-        for (File file : getBootClassPath().get()) {
-            urlList.add(file.toString().endsWith(".jar")? defineJarUrl(file.toString()) : defineClassDirUrl(file.toString()));
-        }
-
-        final URL[] urls = urlList.toArray(new URL[0]);
-
-        try {
-            final InputDirClassLoader loader = new InputDirClassLoader(interfacesClasspath, new URLClassLoader(urls));
-            final HashMap<String, InterfaceInfo> interfaceInfo = new HashMap<>();
-            for (String candidate : interfaceCandidates) {
-                final Class<?> cls = loader.loadClass(candidate);
-                if (cls.isInterface()) {
-                    final ArrayList<String> extendingInterfaces = new ArrayList<>();
-                    for (Class<?> extending : cls.getInterfaces()) {
-                        extendingInterfaces.add(extending.getName());
-                    }
-
-                    final HashMap<String, String> methodNameAndType = new HashMap<>();
-                    boolean allGetters = true;
-                    for (Method method : cls.getDeclaredMethods()) {
-                        if (!method.isDefault()) {
-                            if (method.getParameterCount() != 0) {
-                                allGetters = false;
-                            }
-                            else {
-                                methodNameAndType.put(method.getName(), method.getReturnType().getName());
-                            }
-                        }
-                    }
-
-                    if (allGetters) {
-                        interfaceInfo.put(candidate, new InterfaceInfo(extendingInterfaces, methodNameAndType));
-                    }
-                }
+        final ArrayList<File> resourcesDirs = new ArrayList<>(getResourcesDirs().getFiles());
+        if (getResourcesDir().isPresent()) {
+            if (!resourcesDirs.isEmpty()) {
+                throw new UnsupportedOperationException("Only one of resourcesDir and resourcesDirs can be set");
             }
 
-            final HashMap<String, Map<String, String>> resolvedInterfaces = new HashMap<>();
-            for (String interfaceName : interfaceInfo.keySet()) {
-                final HashMap<String, String> methodNameAndType = new HashMap<>();
-                if (resolveInterface(interfaceName, interfaceInfo, methodNameAndType)) {
-                    resolvedInterfaces.put(interfaceName, methodNameAndType);
-                }
-            }
-
-            final File resourceDir = getResourcesDir().get().getAsFile();
-            final ArrayList<String> variants = new ArrayList<>();
-            boolean defaultLayoutFolderFound = false;
-            for (String fileName : resourceDir.list()) {
-                if (fileName.startsWith("layout")) {
-                    final File dir = new File(resourceDir, fileName);
-                    if (dir.isDirectory()) {
-                        if ("layout".equals(fileName)) {
-                            defaultLayoutFolderFound = true;
-                        }
-                        else if (fileName.startsWith("layout-")) {
-                            variants.add(fileName.substring(7));
-                        }
-                    }
-                }
-            }
-
-            if (!defaultLayoutFolderFound) {
-                throw new RuntimeException("Unable to find subfolder 'layout' in " + resourceDir.toString());
-            }
-
-            final HashMap<String, ArrayList<String>> variantFileNames = new HashMap<>();
-            for (String variantName : variants) {
-                final File subfolder = new File(resourceDir, "layout-" + variantName);
-                final ArrayList<String> fileNames = new ArrayList<>();
-                for (String fileName : subfolder.list()) {
-                    if (fileName.endsWith(".xml")) {
-                        final int length = fileName.length();
-                        fileNames.add(fileName.substring(0, length));
-                    }
-                }
-                variantFileNames.put(variantName, fileNames);
-            }
-
-            final File defaultLayoutsDir = new File(resourceDir, "layout");
-            final String packageName = getPackageName().get();
-            final File outputDir = getOutputDir().get().getAsFile();
-            File currentFile = outputDir;
-            for (String split : packageName.split("\\.")) {
-                currentFile = new File(currentFile, split);
-            }
-
-            final File packageFile = currentFile;
-            packageFile.mkdirs();
-
-            final Set<String> knownPlaceholderStrings = obtainKnownPlaceholderStrings(getResourcesDir().get().getAsFile());
-            final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-            final Map<String, ParserHandler> parseResults = new HashMap<>();
-            for (String fileName : defaultLayoutsDir.list()) {
-                if (fileName.endsWith(".xml")) {
-                    final File file = new File(defaultLayoutsDir, fileName);
-                    try (InputStream inStream = new FileInputStream(file)) {
-                        final ParserHandler handler = new ParserHandler(fileName, knownPlaceholderStrings);
-                        final SAXParser parser = saxParserFactory.newSAXParser();
-                        parser.parse(inStream, handler);
-
-                        if (!handler.conflictingIds.isEmpty()) {
-                            throw new RuntimeException("Duplicated id " + handler.conflictingIds.stream().reduce("", (a, b) -> a + ", " + b) + " in " + file);
-                        }
-
-                        final int fileNameLength = fileName.length();
-                        final String layoutName = fileName.substring(0, fileNameLength - 4);
-                        parseResults.put(layoutName, handler);
-                    }
-                }
-            }
+            resourcesDirs.add(getResourcesDir().get().getAsFile());
+        }
 
-            for (Map.Entry<String, ParserHandler> resultEntry : parseResults.entrySet()) {
-                final ParserHandler handler = resultEntry.getValue();
-                final HashMap<String, String> idsAndTypes = new HashMap<>();
-                final HashMap<String, String> idsAndWrappers = new HashMap<>();
-                final HashSet<String> conflictingIds = new HashSet<>();
-                resolve(parseResults, resultEntry.getKey(), idsAndTypes, idsAndWrappers, null, conflictingIds);
-
-                final HashMap<String, String> idsAndTypesToMatch = new HashMap<>(idsAndTypes);
-                idsAndTypesToMatch.put("view", handler.rootTag);
-
-                final HashSet<String> matchingInterfaces = new HashSet<>();
-                for (String interfaceName : resolvedInterfaces.keySet()) {
-                    final Map<String, String> interfMap = resolvedInterfaces.get(interfaceName);
-                    boolean allMatching = true;
-                    for (String methodName : interfMap.keySet()) {
-                        if (!idsAndTypesToMatch.containsKey(methodName) || !canBeCasted(loader, tagNameToType(idsAndTypesToMatch.get(methodName)), interfMap.get(methodName))) {
-                            allMatching = false;
-                            break;
-                        }
-                    }
-
-                    if (allMatching) {
-                        matchingInterfaces.add(interfaceName);
-                    }
-                }
-
-                final String rootType = tagNameToType(handler.rootTag);
-                final String layoutName = resultEntry.getKey();
-                final String classSimpleName = fromSnakeToPascalCase(layoutName) + "Layout";
-
-                final String ensureNonNullFunction = getEnsureNonNullFunction().get();
-                final int ensureNonNullFunctionLastDotIndex = ensureNonNullFunction.lastIndexOf('.');
-                final String ensureNonNullFunctionName = (ensureNonNullFunctionLastDotIndex >= 0)? ensureNonNullFunction.substring(ensureNonNullFunctionLastDotIndex + 1) : ensureNonNullFunction;
-
-                final String androidResourceClassName = getAndroidResourceClass().get();
-                if (androidResourceClassName.length() <= 2 && !androidResourceClassName.endsWith(".R")) {
-                    throw new UnsupportedOperationException("Android resource class is expected to be a full qualified class reference where the class is called 'R'. But it was " + androidResourceClassName);
-                }
-
-                final File outFile = new File(packageFile, classSimpleName + ".java");
-                try (PrintWriter writer = new PrintWriter(new FileOutputStream(outFile), true)) {
-                    writer.println("// This file is autogenerated. Please do not edit it.");
-                    writer.println("package " + packageName + ";");
-                    writer.println();
-                    writer.println("import " + getLayoutInterface().get() + ";");
-                    writer.println("import " + androidResourceClassName + ";");
-                    writer.println();
-                    writer.println("import android.content.Context;");
-                    writer.println("import android.view.ContextThemeWrapper;");
-                    writer.println("import android.view.LayoutInflater;");
-                    writer.println("import android.view.ViewGroup;");
-                    writer.println();
-                    writer.println("import androidx.annotation.NonNull;");
-                    writer.println("import androidx.annotation.StyleRes;");
-                    if (ensureNonNullFunctionLastDotIndex >= 0) {
-                        writer.println();
-                        writer.println("import static " + ensureNonNullFunction + ";");
-                    }
-                    writer.println();
-
-                    final String extensions;
-                    if (matchingInterfaces.isEmpty()) {
-                        extensions = "";
-                    }
-                    else {
-                        StringBuilder sb = null;
-                        for (String interfName : matchingInterfaces) {
-                            if (sb == null) {
-                                sb = new StringBuilder(" implements ");
-                            }
-                            else {
-                                sb.append(", ");
-                            }
-                            sb.append(interfName);
-                        }
-                        extensions = sb.toString();
-                    }
-
-                    writer.println("public final class " + classSimpleName + extensions + " {");
-                    writer.println();
-
-                    writer.println("    @NonNull");
-                    writer.println("    private final " + rootType + " mRoot;");
-                    for (Map.Entry<String, String> entry : idsAndTypes.entrySet()) {
-                        writer.println("    private " + tagNameToType(entry.getValue()) + ' ' + entry.getKey() + ";");
-                    }
-
-                    writer.println();
-                    writer.println("    private " + classSimpleName + "(@NonNull " + rootType + " root) {");
-                    writer.println("        " + ensureNonNullFunctionName + "(root);");
-                    writer.println("        mRoot = root;");
-                    writer.println("    }");
-
-                    writer.println();
-                    writer.println("    @NonNull");
-                    writer.println("    public " + rootType + " view() {");
-                    writer.println("        return mRoot;");
-                    writer.println("    }");
-
-                    for (Map.Entry<String, String> entry : idsAndTypes.entrySet()) {
-                        writer.println();
-                        writer.println("    @NonNull");
-                        writer.println("    public " + tagNameToType(entry.getValue()) + ' ' + entry.getKey() + "() {");
-                        writer.println("        if (" + entry.getKey() + " == null) {");
-                        final String wrapping = idsAndWrappers.get(entry.getKey());
-                        writer.println("            " + entry.getKey() + " = " + ((wrapping != null)? wrapping + "()" : "mRoot") + ".findViewById(R.id." + entry.getKey() + ");");
-                        writer.println("        }");
-                        writer.println();
-                        writer.println("        return " + entry.getKey() + ";");
-                        writer.println("    }");
-                    }
-
-                    writer.println();
-                    writer.println("    @NonNull");
-                    writer.println("    public static " + classSimpleName + " attachWithLayoutInflater(@NonNull LayoutInflater inflater, @NonNull ViewGroup parent) {");
-                    writer.println("        final int position = parent.getChildCount();");
-                    writer.println("        inflater.inflate(R.layout." + layoutName + ", parent, true);");
-                    writer.println("        return new " + classSimpleName + "((" + rootType + ") parent.getChildAt(position));");
-                    writer.println("    }");
-                    writer.println();
-                    writer.println("    @NonNull");
-                    writer.println("    public static " + classSimpleName + " createWithLayoutInflater(@NonNull LayoutInflater inflater, ViewGroup parent) {");
-                    writer.println("        return new " + classSimpleName + "((" + rootType + ") inflater.inflate(R.layout." + layoutName + ", parent, false));");
-                    writer.println("    }");
-                    writer.println();
-                    writer.println("    @NonNull");
-                    writer.println("    public static " + classSimpleName + " create(@NonNull ViewGroup parent) {");
-                    writer.println("        return createWithLayoutInflater(LayoutInflater.from(parent.getContext()), parent);");
-                    writer.println("    }");
-                    writer.println();
-                    writer.println("    @NonNull");
-                    writer.println("    public static " + classSimpleName + " createWithTheme(@StyleRes int styleResId, @NonNull ViewGroup parent) {");
-                    writer.println("        final Context context = parent.getContext();");
-                    writer.println("        final Context themedContext = new ContextThemeWrapper(context, styleResId);");
-                    writer.println("        return createWithLayoutInflater(LayoutInflater.from(themedContext), parent);");
-                    writer.println("    }");
-                    writer.println("}");
-                }
-            }
+        final LayoutWrappersGenerator generator = new LayoutWrappersGenerator(getPackageName().get(), getLayoutInterface().get(), getAndroidResourceClass().get(), getEnsureNonNullFunction().get(), getBootClassPath().get(), getInterfacesClasspath().get().getAsFile(), resourcesDirs, getOutputDir().isPresent()? getOutputDir().get().getAsFile() : null);
+        generator.setOutputSrcJar(getOutputSrcJar().isPresent()? getOutputSrcJar().get().getAsFile() : null);
+        generator.setKnownCasts(getKnownCasts().get());
+        generator.setBootClassPathIndexDir(getBootClassPathIndexDir().get().getAsFile());
+        generator.setIncludedResourcesDirs(new ArrayList<>(getIncludedResourcesDirs().getFiles()));
+        generator.setDependencyResources(new ArrayList<>(getDependencyResources().getFiles()));
+        generator.setDependencyLayoutIndexDir(getDependencyLayoutIndexDir().get().getAsFile());
+        generator.setViewHolderLayouts(getViewHolderLayouts().getOrElse(Collections.emptyList()));
+        generator.setAsyncInflation(getAsyncInflation().getOrElse(false));
+        generator.setGeneratedViewConstruction(getGeneratedViewConstruction().getOrElse(false));
+        generator.setSharedBaseClass(getSharedBaseClass().getOrElse(false));
+        generator.setResolvedLayoutsFile(getResolvedLayoutsFile().isPresent()? getResolvedLayoutsFile().get().getAsFile() : null);
+        generator.setHierarchyReportFile(getHierarchyReportFile().isPresent()? getHierarchyReportFile().get().getAsFile() : null);
+        generator.setHierarchyBudgets(getHierarchyBudgets().getOrElse(Collections.emptyMap()));
+        generator.setOutputCacheDir(getOutputCacheDir().get().getAsFile());
+        generator.setOutputCacheMaxSize(getOutputCacheMaxSize().get());
+
+        final SharedLayoutAnalysisService service = getSharedAnalysis().getOrNull();
+        if (service != null) {
+            generator.generate(service.getAnalysis());
         }
-        catch (ClassNotFoundException | IOException | ParserConfigurationException | SAXException e) {
-            throw new UnsupportedOperationException("Failure on creating layout wrappers", e);
+        else {
+            generator.generate();
         }
     }
 }
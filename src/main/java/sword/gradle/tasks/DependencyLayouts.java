@@ -0,0 +1,229 @@
+package sword.gradle.tasks;
+
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Layouts in the default layout folder of an AAR dependency.
+ *
+ * Layout files are parsed directly from the archive, without extracting it. As AAR files are immutable
+ * for a given version, the resulting records are persisted in the given cache directory, keyed by the hash
+ * of the archive, so that later builds using the same dependency do not need to open it at all.
+ */
+final class DependencyLayouts {
+
+    private static final int MAGIC = 0x534c4449;
+    private static final int VERSION = 2;
+    private static final String LAYOUT_ENTRY_PREFIX = "res/layout/";
+    private static final String LAYOUT_ENTRY_SUFFIX = ".xml";
+
+    private DependencyLayouts() {
+    }
+
+    static boolean isArchive(File file) {
+        return file.getName().endsWith(".aar");
+    }
+
+    /**
+     * Returns the resource directory within the given dependency directory.
+     * Exploded AARs keep their resources in the res folder, any other directory is expected to be a resource directory itself.
+     */
+    static File resourceDir(File dependencyDir) {
+        final File resDir = new File(dependencyDir, "res");
+        return resDir.isDirectory()? resDir : dependencyDir;
+    }
+
+    /**
+     * Returns the layouts in the default layout folder of the given AAR file,
+     * reading them from the cache directory if they were already indexed.
+     */
+    static SharedAnalysis.LayoutIndex index(File archive, File cacheDir, SymbolTable symbols) throws IOException, ParserConfigurationException, SAXException {
+        final File indexFile = new File(cacheDir, ContentHash.ofFile(archive) + ".bin");
+        if (indexFile.isFile()) {
+            try {
+                return readIndex(indexFile, symbols);
+            }
+            catch (IOException e) {
+                // Corrupted or from an incompatible version. It is indexed again and replaced below.
+                indexFile.delete();
+            }
+        }
+
+        final TreeMap<String, LayoutRecord> layouts = new TreeMap<>();
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final String entryName = entry.getName();
+                if (!entry.isDirectory() && entryName.startsWith(LAYOUT_ENTRY_PREFIX) && entryName.endsWith(LAYOUT_ENTRY_SUFFIX) && entryName.indexOf('/', LAYOUT_ENTRY_PREFIX.length()) < 0) {
+                    final String layoutName = entryName.substring(LAYOUT_ENTRY_PREFIX.length(), entryName.length() - LAYOUT_ENTRY_SUFFIX.length());
+                    try (InputStream inStream = zipFile.getInputStream(entry)) {
+                        layouts.put(layoutName, LayoutParser.parse(inStream, archive + "!/" + entryName, Collections.emptySet(), symbols));
+                    }
+                }
+            }
+        }
+
+        final IntIntMap positions = new IntIntMap();
+        final ArrayList<LayoutRecord> records = new ArrayList<>(layouts.size());
+        for (Map.Entry<String, LayoutRecord> entry : layouts.entrySet()) {
+            positions.put(symbols.intern(entry.getKey()), records.size());
+            records.add(entry.getValue());
+        }
+
+        final SharedAnalysis.LayoutIndex index = new SharedAnalysis.LayoutIndex(positions, records);
+        writeIndex(indexFile, index, symbols);
+        return index;
+    }
+
+    private static void writeSymbol(DataOutputStream outStream, int symbol, SymbolTable symbols) throws IOException {
+        outStream.writeUTF((symbol >= 0)? symbols.name(symbol) : "");
+    }
+
+    private static void writeSymbols(DataOutputStream outStream, int[] values, SymbolTable symbols) throws IOException {
+        for (int value : values) {
+            writeSymbol(outStream, value, symbols);
+        }
+    }
+
+    private static void writeIndex(File indexFile, SharedAnalysis.LayoutIndex index, SymbolTable symbols) throws IOException {
+        final File parent = indexFile.getParentFile();
+        parent.mkdirs();
+
+        final File tempFile = File.createTempFile(indexFile.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                outStream.writeInt(MAGIC);
+                outStream.writeInt(VERSION);
+                outStream.writeInt(index.positions.size());
+                for (int i = 0; i < index.positions.size(); i++) {
+                    final LayoutRecord record = index.records.get(index.positions.valueAt(i));
+                    writeSymbol(outStream, index.positions.keyAt(i), symbols);
+                    writeSymbol(outStream, record.rootTag, symbols);
+                    outStream.writeUTF(record.contentHash);
+                    outStream.writeInt(record.ids.length);
+                    writeSymbols(outStream, record.ids, symbols);
+                    for (int type : record.types) {
+                        // Includes are stored as the complement of the layout symbol
+                        outStream.writeBoolean(type < 0);
+                        writeSymbol(outStream, (type < 0)? ~type : type, symbols);
+                    }
+
+                    writeSymbols(outStream, record.wrappers, symbols);
+                    writeSymbols(outStream, record.stubLayouts, symbols);
+                    outStream.writeInt(record.includedLayouts.length);
+                    writeSymbols(outStream, record.includedLayouts, symbols);
+
+                    final LayoutHierarchy hierarchy = record.hierarchy;
+                    outStream.writeInt(hierarchy.viewCount);
+                    outStream.writeInt(hierarchy.maxDepth);
+                    outStream.writeInt(hierarchy.weightedLayouts);
+                    outStream.writeInt(hierarchy.nestedWeights);
+                    outStream.writeInt(hierarchy.includeLayouts.length);
+                    for (int includeIndex = 0; includeIndex < hierarchy.includeLayouts.length; includeIndex++) {
+                        writeSymbol(outStream, hierarchy.includeLayouts[includeIndex], symbols);
+                        outStream.writeInt(hierarchy.includeDepths[includeIndex]);
+                        outStream.writeBoolean(hierarchy.includeWeighted[includeIndex]);
+                    }
+                }
+            }
+
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    private static int readSymbol(DataInputStream inStream, SymbolTable symbols) throws IOException {
+        final String name = inStream.readUTF();
+        return name.isEmpty()? -1 : symbols.intern(name);
+    }
+
+    private static int[] readSymbols(DataInputStream inStream, int count, SymbolTable symbols) throws IOException {
+        final int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readSymbol(inStream, symbols);
+        }
+
+        return values;
+    }
+
+    private static int readCount(DataInputStream inStream) throws IOException {
+        final int count = inStream.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupted layout index");
+        }
+
+        return count;
+    }
+
+    private static SharedAnalysis.LayoutIndex readIndex(File indexFile, SymbolTable symbols) throws IOException {
+        try (DataInputStream inStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (inStream.readInt() != MAGIC || inStream.readInt() != VERSION) {
+                throw new IOException("Unsupported layout index " + indexFile);
+            }
+
+            final int layoutCount = readCount(inStream);
+            final IntIntMap positions = new IntIntMap();
+            final List<LayoutRecord> records = new ArrayList<>(layoutCount);
+            for (int layoutIndex = 0; layoutIndex < layoutCount; layoutIndex++) {
+                final int layout = readSymbol(inStream, symbols);
+                final int rootTag = readSymbol(inStream, symbols);
+                final String contentHash = inStream.readUTF();
+                final int idCount = readCount(inStream);
+                final int[] ids = readSymbols(inStream, idCount, symbols);
+                final int[] types = new int[idCount];
+                for (int i = 0; i < idCount; i++) {
+                    final boolean include = inStream.readBoolean();
+                    final int type = readSymbol(inStream, symbols);
+                    types[i] = include? ~type : type;
+                }
+
+                final int[] wrappers = readSymbols(inStream, idCount, symbols);
+                final int[] stubLayouts = readSymbols(inStream, idCount, symbols);
+                final int[] includedLayouts = readSymbols(inStream, readCount(inStream), symbols);
+
+                final int viewCount = inStream.readInt();
+                final int maxDepth = inStream.readInt();
+                final int weightedLayouts = inStream.readInt();
+                final int nestedWeights = inStream.readInt();
+                final int includeCount = readCount(inStream);
+                final int[] includeLayouts = new int[includeCount];
+                final int[] includeDepths = new int[includeCount];
+                final boolean[] includeWeighted = new boolean[includeCount];
+                for (int i = 0; i < includeCount; i++) {
+                    includeLayouts[i] = readSymbol(inStream, symbols);
+                    includeDepths[i] = inStream.readInt();
+                    includeWeighted[i] = inStream.readBoolean();
+                }
+
+                final LayoutHierarchy hierarchy = new LayoutHierarchy(viewCount, maxDepth, weightedLayouts, nestedWeights, includeLayouts, includeDepths, includeWeighted);
+                positions.put(layout, records.size());
+                records.add(new LayoutRecord(rootTag, ids, types, wrappers, stubLayouts, includedLayouts, contentHash, hierarchy));
+            }
+
+            return new SharedAnalysis.LayoutIndex(positions, records);
+        }
+    }
+}
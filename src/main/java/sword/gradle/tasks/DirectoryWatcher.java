@@ -0,0 +1,89 @@
+package sword.gradle.tasks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the given directories and all their subdirectories, including the ones created later,
+ * reporting the paths that change within them.
+ */
+final class DirectoryWatcher implements Closeable {
+
+    private final WatchService mWatchService;
+    private final HashMap<WatchKey, Path> mDirs = new HashMap<>();
+
+    DirectoryWatcher(List<File> roots) throws IOException {
+        mWatchService = FileSystems.getDefault().newWatchService();
+        for (File root : roots) {
+            if (root.isDirectory()) {
+                register(root.toPath());
+            }
+        }
+    }
+
+    private void register(Path root) throws IOException {
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                mDirs.put(dir.register(mWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Blocks until any change happens, and returns all paths changed until no more changes are received
+     * for the given time, as editors and tools usually write a file in several steps.
+     * If changes are lost because there were too many of them, the directory containing them is returned instead.
+     */
+    Set<Path> awaitChanges(long quietMillis) throws IOException, InterruptedException {
+        final HashSet<Path> changes = new HashSet<>();
+        WatchKey key = mWatchService.take();
+        while (key != null) {
+            final Path dir = mDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changes.add(dir);
+                }
+                else {
+                    final Path path = dir.resolve((Path) event.context());
+                    changes.add(path);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        register(path);
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                mDirs.remove(key);
+            }
+
+            key = mWatchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return changes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWatchService.close();
+    }
+}
@@ -0,0 +1,197 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Finds files within directory trees, taking the file types from the attributes
+ * obtained while walking the tree, in order to avoid checking each file again.
+ *
+ * Symbolic links are followed, as some build tools, like Bazel in its sandboxes, provide all inputs as links.
+ */
+final class FileDiscovery {
+
+    static final class FoundFile {
+
+        /**
+         * Path relative to the walked root, using '/' as separator.
+         */
+        final String relativePath;
+        final long size;
+        final long lastModified;
+
+        FoundFile(String relativePath, long size, long lastModified) {
+            this.relativePath = relativePath;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static String relativePath(Path root, Path file) {
+        final String path = root.relativize(file).toString();
+        return (File.separatorChar == '/')? path : path.replace(File.separatorChar, '/');
+    }
+
+    private static void walk(Path root, Path start, int maxDepth, String extension, List<FoundFile> files, List<Path> pendingDirs) throws IOException {
+        Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(extension)) {
+                    files.add(new FoundFile(relativePath(root, file), attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                else if (attrs.isDirectory() && pendingDirs != null) {
+                    pendingDirs.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Returns all files within the given directory, at any depth, whose name ends with the given extension,
+     * sorted by their relative path. The subdirectories at the first level are walked in parallel.
+     * An empty list is returned if the directory does not exist.
+     */
+    static List<FoundFile> findFiles(File dir, String extension) throws IOException {
+        final Path root = dir.toPath();
+        final ArrayList<FoundFile> files = new ArrayList<>();
+        final ArrayList<Path> subDirs = new ArrayList<>();
+        try {
+            walk(root, root, 1, extension, files, subDirs);
+        }
+        catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        }
+
+        try {
+            files.addAll(subDirs.parallelStream().flatMap(subDir -> {
+                final ArrayList<FoundFile> subDirFiles = new ArrayList<>();
+                try {
+                    walk(root, subDir, Integer.MAX_VALUE, extension, subDirFiles, null);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return subDirFiles.stream();
+            }).collect(Collectors.toList()));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        files.sort(Comparator.comparing(file -> file.relativePath));
+        return files;
+    }
+
+    /**
+     * Returns the resource folders of the given type within the given resource directory, and the files
+     * they contain whose name ends with the given extension.
+     *
+     * The folder names are the keys of the returned map. The default folder, whose name matches the given type,
+     * comes first if present, followed by the qualified ones, like type + "-land", sorted by name.
+     * Files are sorted by name as well. An empty map is returned if the resource directory does not exist.
+     */
+    static Map<String, List<File>> findResourceFolders(File resourceDir, String type, String extension) throws IOException {
+        final String qualifiedPrefix = type + '-';
+        final Path root = resourceDir.toPath();
+        final TreeMap<String, List<File>> folders = new TreeMap<>();
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 2, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    final String name = dir.getFileName().toString();
+                    if (name.equals(type) || name.startsWith(qualifiedPrefix)) {
+                        folders.put(name, new ArrayList<>());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    final Path parent = file.getParent();
+                    if (attrs.isRegularFile() && !parent.equals(root) && file.getFileName().toString().endsWith(extension)) {
+                        folders.get(parent.getFileName().toString()).add(file.toFile());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (NoSuchFileException e) {
+            return Collections.emptyMap();
+        }
+
+        final LinkedHashMap<String, List<File>> result = new LinkedHashMap<>();
+        final List<File> defaultFolder = folders.remove(type);
+        if (defaultFolder != null) {
+            result.put(type, defaultFolder);
+        }
+        result.putAll(folders);
+
+        for (List<File> files : result.values()) {
+            files.sort(Comparator.comparing(File::getName));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the resource folders of the given type among all the given resource directories, merged as Android does
+     * for source set overlays. When a file with the same name is found in the same folder of several directories,
+     * the one in the last directory is taken. The result is sorted in the same way as {@link #findResourceFolders(File, String, String)}.
+     */
+    static Map<String, List<File>> findResourceFolders(List<File> resourceDirs, String type, String extension) throws IOException {
+        if (resourceDirs.size() == 1) {
+            return findResourceFolders(resourceDirs.get(0), type, extension);
+        }
+
+        final TreeMap<String, TreeMap<String, File>> folders = new TreeMap<>();
+        for (File resourceDir : resourceDirs) {
+            for (Map.Entry<String, List<File>> folder : findResourceFolders(resourceDir, type, extension).entrySet()) {
+                final TreeMap<String, File> files = folders.computeIfAbsent(folder.getKey(), key -> new TreeMap<>());
+                for (File file : folder.getValue()) {
+                    files.put(file.getName(), file);
+                }
+            }
+        }
+
+        final LinkedHashMap<String, List<File>> result = new LinkedHashMap<>();
+        final TreeMap<String, File> defaultFolder = folders.remove(type);
+        if (defaultFolder != null) {
+            result.put(type, new ArrayList<>(defaultFolder.values()));
+        }
+
+        for (Map.Entry<String, TreeMap<String, File>> folder : folders.entrySet()) {
+            result.put(folder.getKey(), new ArrayList<>(folder.getValue().values()));
+        }
+
+        return result;
+    }
+
+    private FileDiscovery() {
+    }
+}
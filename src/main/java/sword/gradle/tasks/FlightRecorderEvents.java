@@ -0,0 +1,101 @@
+package sword.gradle.tasks;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Event types registered in Java Flight Recorder for {@link GenerationEvents}.
+ * This class must not be loaded unless JFR is available.
+ */
+final class FlightRecorderEvents {
+
+    @Category({"Android", "Wrapper Generation"})
+    abstract static class Phase extends Event {
+        @Label("Files")
+        String files;
+
+        @Label("Count")
+        int count;
+    }
+
+    @Name("sword.gradle.tasks.LayoutParse")
+    @Label("Layout Parse")
+    @Description("Parsing of a layout file. Count is the number of views with id found.")
+    static final class LayoutParse extends Phase {
+    }
+
+    @Name("sword.gradle.tasks.IncludeResolution")
+    @Label("Include Resolution")
+    @Description("Resolution of the includes of a layout in all its variants. Count is the number of layout folders with their own resolution.")
+    static final class IncludeResolution extends Phase {
+    }
+
+    @Name("sword.gradle.tasks.InterfaceLoad")
+    @Label("Interface Load")
+    @Description("Loading and reflection of the classes in the interfaces classpath. Count is the number of interfaces a wrapper can implement.")
+    static final class InterfaceLoad extends Phase {
+    }
+
+    @Name("sword.gradle.tasks.CastCheck")
+    @Label("Cast Check")
+    @Description("Matching of a layout against the interfaces. Count is the number of casts checked in the type hierarchy.")
+    static final class CastCheck extends Phase {
+    }
+
+    @Name("sword.gradle.tasks.LocaleValidation")
+    @Label("Locale Validation")
+    @Description("Parsing and validation against the default strings of a qualified values folder, like the one of a locale. Count is the number of strings found.")
+    static final class LocaleValidation extends Phase {
+    }
+
+    @Name("sword.gradle.tasks.FileEmission")
+    @Label("File Emission")
+    @Description("Writing of a generated source file or srcjar. Count is the size of the content written.")
+    static final class FileEmission extends Phase {
+    }
+
+    static Object begin(int phase) {
+        final Phase event;
+        switch (phase) {
+            case GenerationEvents.LAYOUT_PARSE:
+                event = new LayoutParse();
+                break;
+            case GenerationEvents.INCLUDE_RESOLUTION:
+                event = new IncludeResolution();
+                break;
+            case GenerationEvents.INTERFACE_LOAD:
+                event = new InterfaceLoad();
+                break;
+            case GenerationEvents.CAST_CHECK:
+                event = new CastCheck();
+                break;
+            case GenerationEvents.LOCALE_VALIDATION:
+                event = new LocaleValidation();
+                break;
+            case GenerationEvents.FILE_EMISSION:
+                event = new FileEmission();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown generation phase " + phase);
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object event, String files, int count) {
+        final Phase phase = (Phase) event;
+        phase.end();
+        if (phase.shouldCommit()) {
+            phase.files = files;
+            phase.count = count;
+            phase.commit();
+        }
+    }
+
+    private FlightRecorderEvents() {
+    }
+}
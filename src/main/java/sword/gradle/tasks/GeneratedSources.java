@@ -0,0 +1,33 @@
+package sword.gradle.tasks;
+
+import java.io.IOException;
+
+/**
+ * Destination of the source files resulting from a generation, identified by their path relative to the source root.
+ *
+ * Each file is given with a key identifying its content, so that files that did not change since the previous
+ * generation can be kept as they are. Files may be written or kept concurrently.
+ */
+interface GeneratedSources {
+
+    /**
+     * Starts a new generation.
+     */
+    void start() throws IOException;
+
+    /**
+     * Keeps the file at the given path as it is, if it was written by the previous generation with the same key.
+     * @return Whether the file has been kept.
+     */
+    boolean keep(String path, String key) throws IOException;
+
+    /**
+     * Writes the given file content. The key can be null if unknown, and then it will not be kept in later generations.
+     */
+    void write(String path, String key, byte[] content) throws IOException;
+
+    /**
+     * Completes the generation. Any file from the previous generation that has not been written or kept in this one is removed.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,67 @@
+package sword.gradle.tasks;
+
+/**
+ * Java Flight Recorder events for the phases of the wrapper generation, carrying the files involved and the number
+ * of items processed, so that the time and allocation in a recording can be attributed to specific layouts or locales.
+ *
+ * JFR is not present in all JVMs able to run these tasks. Then, classes in jdk.jfr are only touched through
+ * {@link FlightRecorderEvents} once they are known to be available, and nothing is emitted otherwise.
+ * As for any other JFR event, events are only recorded if a running recording enables them.
+ */
+final class GenerationEvents {
+
+    static final int LAYOUT_PARSE = 0;
+    static final int INCLUDE_RESOLUTION = 1;
+    static final int INTERFACE_LOAD = 2;
+    static final int CAST_CHECK = 3;
+    static final int LOCALE_VALIDATION = 4;
+    static final int FILE_EMISSION = 5;
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Phase in progress, which is recorded when ended.
+     * If the phase fails, it is not ended and nothing is recorded.
+     */
+    static final class Span {
+        private final Object mEvent;
+
+        private Span(Object event) {
+            mEvent = event;
+        }
+
+        /**
+         * Ends this phase, recording it if enabled.
+         *
+         * @param files File or files involved, or any other name identifying what was processed, like a layout or a locale.
+         * @param count Number of items processed, whose meaning depends on the phase.
+         */
+        void end(String files, int count) {
+            if (mEvent != null) {
+                FlightRecorderEvents.commit(mEvent, files, count);
+            }
+        }
+    }
+
+    private static final Span DISABLED = new Span(null);
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, GenerationEvents.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing the given phase, that must be one of the constants in this class.
+     */
+    static Span begin(int phase) {
+        return AVAILABLE? new Span(FlightRecorderEvents.begin(phase)) : DISABLED;
+    }
+
+    private GenerationEvents() {
+    }
+}
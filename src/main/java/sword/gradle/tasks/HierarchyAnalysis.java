@@ -0,0 +1,185 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cost of the view hierarchy resulting from each layout, once all its includes are expanded,
+ * and the check of these costs against the configured budgets.
+ *
+ * Budgets are given by metric name, applying to all layouts, or by layout name and metric name
+ * joined with a dot, like "main_activity.depth", which takes precedence for that layout.
+ */
+final class HierarchyAnalysis {
+
+    static final String VIEWS = "views";
+    static final String DEPTH = "depth";
+    static final String NESTED_WEIGHTS = "nestedWeights";
+    static final String INCLUDES = "includes";
+
+    private static final List<String> METRICS = Arrays.asList(VIEWS, DEPTH, NESTED_WEIGHTS, INCLUDES);
+
+    /**
+     * Cost of a layout with all its includes expanded.
+     */
+    static final class Cost {
+        final int views;
+        final int depth;
+        final int weightedLayouts;
+        final int nestedWeights;
+        final int includes;
+
+        Cost(int views, int depth, int weightedLayouts, int nestedWeights, int includes) {
+            this.views = views;
+            this.depth = depth;
+            this.weightedLayouts = weightedLayouts;
+            this.nestedWeights = nestedWeights;
+            this.includes = includes;
+        }
+
+        int get(String metric) {
+            switch (metric) {
+                case VIEWS:
+                    return views;
+                case DEPTH:
+                    return depth;
+                case NESTED_WEIGHTS:
+                    return nestedWeights;
+                case INCLUDES:
+                    return includes;
+                default:
+                    throw new IllegalArgumentException("Unknown hierarchy metric " + metric);
+            }
+        }
+    }
+
+    private static final Cost IN_PROGRESS = new Cost(0, 0, 0, 0, 0);
+
+    private final LayoutConfigurations mConfigurations;
+    private final List<HashMap<Integer, Cost>> mCosts;
+
+    /**
+     * @param configurations Layout records for each folder, as they are resolved by the includes in that folder.
+     */
+    HierarchyAnalysis(LayoutConfigurations configurations) {
+        mConfigurations = configurations;
+        mCosts = new ArrayList<>(configurations.size());
+        for (int i = 0; i < configurations.size(); i++) {
+            mCosts.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Returns the cost of the given layout, expanding its includes with the layouts found in the given folder.
+     */
+    Cost cost(int folderIndex, int layout, SymbolTable symbols) {
+        final HashMap<Integer, Cost> folderCosts = mCosts.get(folderIndex);
+        final Cost cached = folderCosts.get(layout);
+        if (cached == IN_PROGRESS) {
+            throw new RuntimeException("Circular include found for layout " + symbols.name(layout));
+        }
+        else if (cached != null) {
+            return cached;
+        }
+
+        folderCosts.put(layout, IN_PROGRESS);
+        final LayoutHierarchy hierarchy = mConfigurations.get(folderIndex, layout).hierarchy;
+        int views = hierarchy.viewCount;
+        int depth = hierarchy.maxDepth;
+        int weightedLayouts = hierarchy.weightedLayouts;
+        int nestedWeights = hierarchy.nestedWeights;
+        int includes = hierarchy.includeLayouts.length;
+        for (int i = 0; i < hierarchy.includeLayouts.length; i++) {
+            final int included = hierarchy.includeLayouts[i];
+            if (mConfigurations.get(folderIndex, included) != null) {
+                final Cost includedCost = cost(folderIndex, included, symbols);
+                views += includedCost.views;
+                depth = Math.max(depth, hierarchy.includeDepths[i] - 1 + includedCost.depth);
+                weightedLayouts += includedCost.weightedLayouts;
+                nestedWeights += hierarchy.includeWeighted[i]? includedCost.weightedLayouts : includedCost.nestedWeights;
+                includes += includedCost.includes;
+            }
+        }
+
+        final Cost cost = new Cost(views, depth, weightedLayouts, nestedWeights, includes);
+        folderCosts.put(layout, cost);
+        return cost;
+    }
+
+    /**
+     * Throws if any of the given budgets does not refer to a known metric, or it is negative.
+     */
+    static void checkBudgets(Map<String, Integer> budgets) {
+        for (Map.Entry<String, Integer> entry : budgets.entrySet()) {
+            final String key = entry.getKey();
+            final String metric = key.substring(key.lastIndexOf('.') + 1);
+            if (!METRICS.contains(metric)) {
+                throw new IllegalArgumentException("Unknown hierarchy metric in budget " + key + ". Expected one of " + METRICS);
+            }
+
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Hierarchy budget " + key + " cannot be negative");
+            }
+        }
+    }
+
+    private static Integer budget(Map<String, Integer> budgets, String layoutName, String metric) {
+        final Integer layoutBudget = budgets.get(layoutName + '.' + metric);
+        return (layoutBudget != null)? layoutBudget : budgets.get(metric);
+    }
+
+    /**
+     * Computes the cost of all layouts in the given folders, writing them into the given report file, if any,
+     * and returns a description for each budget exceeded.
+     *
+     * @param folderRecords Layouts in each folder, mapping the layout symbol to its index in the configurations.
+     */
+    List<String> analyze(List<String> folderNames, List<IntIntMap> folderRecords, SymbolTable symbols, Map<String, Integer> budgets, File reportFile) throws IOException {
+        final TreeMap<String, Cost> costs = new TreeMap<>();
+        final ArrayList<String> violations = new ArrayList<>();
+        for (int folderIndex = 0; folderIndex < folderRecords.size(); folderIndex++) {
+            final IntIntMap folder = folderRecords.get(folderIndex);
+            for (int i = 0; i < folder.size(); i++) {
+                final String layoutName = symbols.name(folder.keyAt(i));
+                final String fileName = folderNames.get(folderIndex) + '/' + layoutName;
+                final Cost cost = cost(folderIndex, folder.keyAt(i), symbols);
+                costs.put(fileName, cost);
+                for (String metric : METRICS) {
+                    final Integer budget = budget(budgets, layoutName, metric);
+                    if (budget != null && cost.get(metric) > budget) {
+                        violations.add(fileName + ": " + metric + " is " + cost.get(metric) + ", but its budget is " + budget);
+                    }
+                }
+            }
+        }
+
+        if (reportFile != null) {
+            reportFile.getParentFile().mkdirs();
+            try (PrintWriter writer = new PrintWriter(new FileOutputStream(reportFile), true)) {
+                writer.println(String.format("%-40s %8s %8s %14s %10s", "Layout", "Views", "Depth", "Nested weights", "Includes"));
+                for (Map.Entry<String, Cost> entry : costs.entrySet()) {
+                    final Cost cost = entry.getValue();
+                    writer.println(String.format("%-40s %8d %8d %14d %10d", entry.getKey(), cost.views, cost.depth, cost.nestedWeights, cost.includes));
+                }
+
+                if (!violations.isEmpty()) {
+                    writer.println();
+                    writer.println("Budgets exceeded:");
+                    for (String violation : violations) {
+                        writer.println("  " + violation);
+                    }
+                }
+            }
+        }
+
+        return violations;
+    }
+}
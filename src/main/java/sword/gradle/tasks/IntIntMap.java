@@ -0,0 +1,127 @@
+package sword.gradle.tasks;
+
+import java.util.Arrays;
+
+/**
+ * Map from non-negative int keys to int values, without boxing.
+ *
+ * Entries are kept in insertion order and can be accessed by position,
+ * while the key lookup is resolved through an open addressing hash table.
+ * Entries cannot be removed.
+ */
+final class IntIntMap {
+
+    private int[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    // Entry position plus one, or 0 when the slot is empty
+    private int[] mTable;
+
+    IntIntMap() {
+        this(8);
+    }
+
+    IntIntMap(int expectedSize) {
+        final int capacity = Math.max(expectedSize, 4);
+        mKeys = new int[capacity];
+        mValues = new int[capacity];
+        mTable = new int[tableSizeFor(capacity)];
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = 8;
+        while (size < capacity * 2) {
+            size <<= 1;
+        }
+
+        return size;
+    }
+
+    /**
+     * Fibonacci hashing. The table size is a power of two, and its slot is taken from the highest bits
+     * of the product, as they depend on all bits of the key.
+     */
+    private static int slotFor(int key, int mask) {
+        return (key * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    int keyAt(int position) {
+        return mKeys[position];
+    }
+
+    int valueAt(int position) {
+        return mValues[position];
+    }
+
+    void setValueAt(int position, int value) {
+        mValues[position] = value;
+    }
+
+    /**
+     * Returns the position of the entry with the given key, or -1 if not present.
+     */
+    int indexOfKey(int key) {
+        final int mask = mTable.length - 1;
+        int slot = slotFor(key, mask);
+        int entry;
+        while ((entry = mTable[slot]) != 0) {
+            if (mKeys[entry - 1] == key) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    boolean containsKey(int key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    int get(int key, int defaultValue) {
+        final int position = indexOfKey(key);
+        return (position >= 0)? mValues[position] : defaultValue;
+    }
+
+    private void insertInTable(int[] table, int key, int position) {
+        final int mask = table.length - 1;
+        int slot = slotFor(key, mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = position + 1;
+    }
+
+    void put(int key, int value) {
+        final int position = indexOfKey(key);
+        if (position >= 0) {
+            mValues[position] = value;
+            return;
+        }
+
+        if (mSize == mKeys.length) {
+            final int newCapacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, newCapacity);
+            mValues = Arrays.copyOf(mValues, newCapacity);
+            final int[] newTable = new int[tableSizeFor(newCapacity)];
+            for (int i = 0; i < mSize; i++) {
+                insertInTable(newTable, mKeys[i], i);
+            }
+            mTable = newTable;
+        }
+
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        insertInTable(mTable, key, mSize);
+        mSize++;
+    }
+}
@@ -0,0 +1,176 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the interfaces in the interfaces classpath that can be implemented by a layout wrapper.
+ * These are the ones only containing getters, considering also the ones they extend.
+ */
+final class InterfaceAnalysis {
+
+    /**
+     * ABI description of a class file, and the state of the file when it was read.
+     */
+    private static final class ClassAbi {
+        final long size;
+        final long lastModified;
+        final String abi;
+
+        ClassAbi(long size, long lastModified, String abi) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.abi = abi;
+        }
+    }
+
+    /**
+     * Last ABI description read for each class file, keyed by its absolute path.
+     * Only one entry is kept per file, replaced whenever the file changes.
+     */
+    private static final Map<String, ClassAbi> sClassAbis = new ConcurrentHashMap<>();
+
+    static final class ResolvedInterface {
+        final String name;
+
+        /**
+         * Symbols for the getter names and the symbols for their return types, including the ones inherited.
+         */
+        final IntIntMap methodsAndTypes;
+
+        ResolvedInterface(String name, IntIntMap methodsAndTypes) {
+            this.name = name;
+            this.methodsAndTypes = methodsAndTypes;
+        }
+    }
+
+    private static final class InterfaceInfo {
+        final List<String> extendingInterfaces;
+        final Map<String, String> methodNameAndType;
+
+        InterfaceInfo(List<String> extendingInterfaces, Map<String, String> methodNameAndType) {
+            this.extendingInterfaces = extendingInterfaces;
+            this.methodNameAndType = methodNameAndType;
+        }
+    }
+
+    private static void findInterfaceCandidates(File folder, HashSet<String> candidates) throws IOException {
+        for (FileDiscovery.FoundFile file : FileDiscovery.findFiles(folder, ".class")) {
+            final String path = file.relativePath;
+            candidates.add(path.substring(0, path.length() - 6).replace('/', '.'));
+        }
+    }
+
+    private static boolean resolveInterface(String interfaceName, Map<String, InterfaceInfo> interfaceInfo, Map<String, String> result) {
+        final InterfaceInfo info = interfaceInfo.get(interfaceName);
+        for (String extending : info.extendingInterfaces) {
+            if (!interfaceInfo.containsKey(extending) || !resolveInterface(extending, interfaceInfo, result)) {
+                return false;
+            }
+        }
+        result.putAll(info.methodNameAndType);
+
+        return true;
+    }
+
+    /**
+     * Returns a hash of the class files within the given directory that only changes when the interfaces
+     * implemented by any wrapper may change. That is, when a class is added, removed or renamed, when its supertypes
+     * change, or when the methods declared in an interface change. Method bodies and any other change are ignored,
+     * and so is the location of the directory.
+     */
+    static String abiFingerprint(File interfacesClasspath) throws IOException {
+        final ArrayList<String> parts = new ArrayList<>();
+        for (FileDiscovery.FoundFile file : FileDiscovery.findFiles(interfacesClasspath, ".class")) {
+            final File classFile = new File(interfacesClasspath, file.relativePath);
+            final String path = classFile.getAbsolutePath();
+            final ClassAbi memoized = sClassAbis.get(path);
+            if (memoized != null && memoized.size == file.size && memoized.lastModified == file.lastModified) {
+                parts.add(memoized.abi);
+            }
+            else {
+                final String abi;
+                try (InputStream inStream = new FileInputStream(classFile)) {
+                    abi = ClassFileReader.readAbi(BootClassPathIndex.readFully(inStream));
+                }
+                sClassAbis.put(path, new ClassAbi(file.size, file.lastModified, abi));
+                parts.add(abi);
+            }
+        }
+
+        Collections.sort(parts);
+        return ContentHash.ofStrings(parts);
+    }
+
+    /**
+     * Loads all classes in the interfaces classpath and returns the interfaces that only have getters,
+     * sorted by name.
+     *
+     * @param bootClassLoader Class loader for the boot classpath, used as parent of the one for the interfaces classpath.
+     */
+    static List<ResolvedInterface> analyze(File interfacesClasspath, ClassLoader bootClassLoader, SymbolTable symbols) throws ClassNotFoundException, IOException {
+        final GenerationEvents.Span span = GenerationEvents.begin(GenerationEvents.INTERFACE_LOAD);
+        final HashSet<String> interfaceCandidates = new HashSet<>();
+        findInterfaceCandidates(interfacesClasspath, interfaceCandidates);
+
+        final InputDirClassLoader loader = new InputDirClassLoader(interfacesClasspath, bootClassLoader);
+        final HashMap<String, InterfaceInfo> interfaceInfo = new HashMap<>();
+        for (String candidate : interfaceCandidates) {
+            final Class<?> cls = loader.loadClass(candidate);
+            if (cls.isInterface()) {
+                final ArrayList<String> extendingInterfaces = new ArrayList<>();
+                for (Class<?> extending : cls.getInterfaces()) {
+                    extendingInterfaces.add(extending.getName());
+                }
+
+                final HashMap<String, String> methodNameAndType = new HashMap<>();
+                boolean allGetters = true;
+                for (Method method : cls.getDeclaredMethods()) {
+                    if (!method.isDefault()) {
+                        if (method.getParameterCount() != 0) {
+                            allGetters = false;
+                        }
+                        else {
+                            methodNameAndType.put(method.getName(), method.getReturnType().getName());
+                        }
+                    }
+                }
+
+                if (allGetters) {
+                    interfaceInfo.put(candidate, new InterfaceInfo(extendingInterfaces, methodNameAndType));
+                }
+            }
+        }
+
+        final ArrayList<String> interfaceNames = new ArrayList<>(interfaceInfo.keySet());
+        Collections.sort(interfaceNames);
+
+        final ArrayList<ResolvedInterface> resolvedInterfaces = new ArrayList<>();
+        for (String interfaceName : interfaceNames) {
+            final HashMap<String, String> methodNameAndType = new HashMap<>();
+            if (resolveInterface(interfaceName, interfaceInfo, methodNameAndType)) {
+                final IntIntMap methods = new IntIntMap(methodNameAndType.size());
+                for (Map.Entry<String, String> entry : methodNameAndType.entrySet()) {
+                    methods.put(symbols.intern(entry.getKey()), symbols.intern(entry.getValue()));
+                }
+                resolvedInterfaces.add(new ResolvedInterface(interfaceName, methods));
+            }
+        }
+
+        span.end(interfacesClasspath.getPath(), resolvedInterfaces.size());
+        return resolvedInterfaces;
+    }
+
+    private InterfaceAnalysis() {
+    }
+}
@@ -0,0 +1,75 @@
+package sword.gradle.tasks;
+
+import java.util.List;
+
+/**
+ * Layout records that an include resolves to in each layout folder of a module.
+ * Variants in a qualified folder take precedence over the default folder, and local layouts over the included ones.
+ *
+ * Records are looked up in the parsed folders instead of being copied into arrays indexed by layout symbol,
+ * as the symbol table is shared by all modules in the build, and it may be much larger than the layouts of a module.
+ */
+final class LayoutConfigurations {
+
+    private final List<IntIntMap> mFolderRecords;
+    private final List<LayoutRecord> mRecords;
+    private final List<SharedAnalysis.LayoutIndex> mIncludedIndexes;
+
+    /**
+     * @param folderRecords Layouts in each folder, mapping the layout symbol to its index in the given records. The first one is expected to be the default one.
+     * @param includedIndexes Layouts from other modules that can be included. Later indexes take precedence.
+     */
+    LayoutConfigurations(List<IntIntMap> folderRecords, List<LayoutRecord> records, List<SharedAnalysis.LayoutIndex> includedIndexes) {
+        mFolderRecords = folderRecords;
+        mRecords = records;
+        mIncludedIndexes = includedIndexes;
+    }
+
+    /**
+     * Number of folders, including the default one.
+     */
+    int size() {
+        return mFolderRecords.size();
+    }
+
+    /**
+     * Returns the record for the given layout symbol in the given folder, or null if it is not found there.
+     */
+    LayoutRecord get(int folderIndex, int layout) {
+        int position = mFolderRecords.get(folderIndex).get(layout, -1);
+        if (position < 0 && folderIndex > 0) {
+            position = mFolderRecords.get(0).get(layout, -1);
+        }
+
+        if (position >= 0) {
+            return mRecords.get(position);
+        }
+
+        for (int i = mIncludedIndexes.size() - 1; i >= 0; i--) {
+            final SharedAnalysis.LayoutIndex index = mIncludedIndexes.get(i);
+            final int indexPosition = index.positions.get(layout, -1);
+            if (indexPosition >= 0) {
+                return index.records.get(indexPosition);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether the given layout symbol is found in any folder.
+     */
+    boolean contains(int layout) {
+        if (get(0, layout) != null) {
+            return true;
+        }
+
+        for (int folderIndex = 1; folderIndex < mFolderRecords.size(); folderIndex++) {
+            if (mFolderRecords.get(folderIndex).containsKey(layout)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+package sword.gradle.tasks;
+
+/**
+ * Structure of a single layout file, without expanding its includes.
+ * This is the information required to estimate the measure and layout cost of the resulting view hierarchy.
+ */
+final class LayoutHierarchy {
+
+    /**
+     * Views declared in the layout. Include and merge tags are not views.
+     */
+    final int viewCount;
+
+    /**
+     * Maximum nesting level among the views, where the root view is at level 1.
+     * Children of a root merge tag are at level 1 as well.
+     */
+    final int maxDepth;
+
+    /**
+     * LinearLayouts with any child having a layout_weight, which requires measuring that child twice.
+     */
+    final int weightedLayouts;
+
+    /**
+     * Weighted layouts within another weighted layout.
+     */
+    final int nestedWeights;
+
+    /**
+     * Symbol of the included layout for each include tag, in document order. The same layout may appear many times.
+     */
+    final int[] includeLayouts;
+
+    /**
+     * For each include tag, the nesting level that the root view of the included layout takes.
+     */
+    final int[] includeDepths;
+
+    /**
+     * For each include tag, whether it is within a weighted layout.
+     */
+    final boolean[] includeWeighted;
+
+    LayoutHierarchy(int viewCount, int maxDepth, int weightedLayouts, int nestedWeights, int[] includeLayouts, int[] includeDepths, boolean[] includeWeighted) {
+        this.viewCount = viewCount;
+        this.maxDepth = maxDepth;
+        this.weightedLayouts = weightedLayouts;
+        this.nestedWeights = nestedWeights;
+        this.includeLayouts = includeLayouts;
+        this.includeDepths = includeDepths;
+        this.includeWeighted = includeWeighted;
+    }
+}
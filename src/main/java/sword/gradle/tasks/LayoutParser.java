@@ -0,0 +1,313 @@
+package sword.gradle.tasks;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+final class LayoutParser {
+
+    private static final class ParserHandler extends DefaultHandler {
+
+        final String fileName;
+        final Set<String> knownPlaceholderStrings;
+        final SymbolTable symbols;
+
+        final IntIntMap idPositions = new IntIntMap();
+        int[] foundIds = new int[16];
+        int[] foundTypes = new int[16];
+        int[] foundWrappers = new int[16];
+        int[] foundStubLayouts = new int[16];
+        final IntIntMap conflictingIds = new IntIntMap(4);
+        final IntIntMap foundLayouts = new IntIntMap(4);
+
+        int rootTag = -1;
+        boolean mergeRoot;
+        int[] idHierarchy = new int[16];
+        int idHierarchyDepth;
+
+        // Structure of the hierarchy. Each element in idHierarchy has a frame at the same position in these arrays
+        boolean[] frameLinear = new boolean[16];
+        boolean[] frameWeighted = new boolean[16];
+        int[] frameWeightedDescendants = new int[16];
+        int[] frameFirstInclude = new int[16];
+        int viewCount;
+        int maxDepth;
+        int weightedLayouts;
+        int nestedWeights;
+        int includeCount;
+        int[] includeLayouts = new int[4];
+        int[] includeDepths = new int[4];
+        boolean[] includeWeighted = new boolean[4];
+
+        ParserHandler(String fileName, Set<String> knownPlaceholderStrings, SymbolTable symbols) {
+            this.fileName = fileName;
+            this.knownPlaceholderStrings = knownPlaceholderStrings;
+            this.symbols = symbols;
+        }
+
+        private void assertValidId(String id) {
+            final int length = id.length();
+            if (id.charAt(0) < 'a' || id.charAt(0) > 'z') {
+                final String message = "View id must start with lower case, but '" + id + "' in " + fileName + " does not.";
+                System.err.println(message);
+                throw new RuntimeException(message);
+            }
+
+            for (int i = 1; i < length; i++) {
+                final char ch = id.charAt(i);
+                if ((ch < 'a' || ch > 'z') && (ch < 'A' || ch > 'Z') && (ch < '0' || ch > '9')) {
+                    final String message = "View id only can contain characters from a-z, A-Z or 0-9. Id '" + id + "' in " + fileName + " does not follow the rule.";
+                    System.err.println(message);
+                    throw new RuntimeException(message);
+                }
+            }
+        }
+
+        private void pushHierarchy(int id, boolean linear) {
+            if (idHierarchyDepth == idHierarchy.length) {
+                final int newLength = idHierarchyDepth * 2;
+                idHierarchy = Arrays.copyOf(idHierarchy, newLength);
+                frameLinear = Arrays.copyOf(frameLinear, newLength);
+                frameWeighted = Arrays.copyOf(frameWeighted, newLength);
+                frameWeightedDescendants = Arrays.copyOf(frameWeightedDescendants, newLength);
+                frameFirstInclude = Arrays.copyOf(frameFirstInclude, newLength);
+            }
+
+            frameLinear[idHierarchyDepth] = linear;
+            frameWeighted[idHierarchyDepth] = false;
+            frameWeightedDescendants[idHierarchyDepth] = 0;
+            frameFirstInclude[idHierarchyDepth] = includeCount;
+            idHierarchy[idHierarchyDepth++] = id;
+        }
+
+        /**
+         * Nesting level for the element starting now. Merge tags as root are not views, and then they do not take any level.
+         */
+        private int currentLevel() {
+            return mergeRoot? idHierarchyDepth : idHierarchyDepth + 1;
+        }
+
+        private void markWeight(Attributes attr) {
+            if (idHierarchyDepth > 0 && frameLinear[idHierarchyDepth - 1] && attr != null && attr.getValue("android:layout_weight") != null) {
+                frameWeighted[idHierarchyDepth - 1] = true;
+            }
+        }
+
+        private void addInclude(int layoutSymbol) {
+            if (includeCount == includeLayouts.length) {
+                final int newLength = includeCount * 2;
+                includeLayouts = Arrays.copyOf(includeLayouts, newLength);
+                includeDepths = Arrays.copyOf(includeDepths, newLength);
+                includeWeighted = Arrays.copyOf(includeWeighted, newLength);
+            }
+
+            includeLayouts[includeCount] = layoutSymbol;
+            includeDepths[includeCount++] = currentLevel();
+        }
+
+        private void addView() {
+            viewCount++;
+            maxDepth = Math.max(maxDepth, currentLevel());
+        }
+
+        private int register(String id, int type, int stubLayout) {
+            assertValidId(id);
+            final int idSymbol = symbols.intern(id);
+            if (idPositions.containsKey(idSymbol)) {
+                conflictingIds.put(idSymbol, 0);
+            }
+            else {
+                int wrappingId = -1;
+                if (idHierarchyDepth >= 2) {
+                    for (int i = idHierarchyDepth - 1; i >= 0; i--) {
+                        if (idHierarchy[i] >= 0) {
+                            wrappingId = idHierarchy[i];
+                            break;
+                        }
+                    }
+                }
+
+                final int position = idPositions.size();
+                if (position == foundIds.length) {
+                    final int newLength = position * 2;
+                    foundIds = Arrays.copyOf(foundIds, newLength);
+                    foundTypes = Arrays.copyOf(foundTypes, newLength);
+                    foundWrappers = Arrays.copyOf(foundWrappers, newLength);
+                    foundStubLayouts = Arrays.copyOf(foundStubLayouts, newLength);
+                }
+
+                foundIds[position] = idSymbol;
+                foundTypes[position] = type;
+                foundWrappers[position] = wrappingId;
+                foundStubLayouts[position] = stubLayout;
+                idPositions.put(idSymbol, position);
+            }
+
+            return idSymbol;
+        }
+
+        @Override
+        public void startElement(String uri, String lName, String qName, Attributes attr) {
+            if (rootTag < 0) {
+                rootTag = symbols.intern(qName);
+                mergeRoot = "merge".equals(qName);
+            }
+
+            markWeight(attr);
+            if ("fragment".equals(qName)) {
+                // Let's ignore it for now
+                addView();
+                pushHierarchy(-1, false);
+            }
+            else if ("include".equals(qName)) {
+                String id = null;
+                String layout = null;
+                final int attrCount = (attr != null) ? attr.getLength() : 0;
+                for (int attrIndex = 0; attrIndex < attrCount && !(id != null && layout != null); attrIndex++) {
+                    if ("android:id".equals(attr.getQName(attrIndex))) {
+                        final String value = attr.getValue(attrIndex);
+                        if (value.startsWith("@+id/")) {
+                            id = value.substring(5);
+                        }
+                        else if (value.startsWith("@id/")) {
+                            id = value.substring(4);
+                        }
+                    }
+                    else if ("layout".equals(attr.getQName(attrIndex))) {
+                        final String value = attr.getValue(attrIndex);
+                        if (value.startsWith("@layout/")) {
+                            layout = value.substring(8);
+                        }
+                    }
+                }
+
+                int idSymbol = -1;
+                if (layout != null) {
+                    final int layoutSymbol = symbols.intern(layout);
+                    if (!foundLayouts.containsKey(layoutSymbol)) {
+                        foundLayouts.put(layoutSymbol, 0);
+                    }
+
+                    if (id != null) {
+                        idSymbol = register(id, ~layoutSymbol, -1);
+                    }
+                    addInclude(layoutSymbol);
+                }
+                else if (id != null) {
+                    idSymbol = symbols.intern(id);
+                }
+                pushHierarchy(idSymbol, false);
+            }
+            else {
+                final int attrCount = (attr != null) ? attr.getLength() : 0;
+                final boolean viewStub = "ViewStub".equals(qName);
+                String id = null;
+                int stubLayout = -1;
+                for (int attrIndex = 0; attrIndex < attrCount; attrIndex++) {
+                    final String value = attr.getValue(attrIndex);
+                    if (value != null && value.startsWith("@string/")) {
+                        final String stringName = value.substring(8);
+                        if (knownPlaceholderStrings.contains(stringName)) {
+                            throw new RuntimeException("Invalid string reference " + value + " in " + fileName + ". String requires placeholders.");
+                        }
+                    }
+
+                    if ("android:id".equals(attr.getQName(attrIndex))) {
+                        if (value.startsWith("@+id/")) {
+                            id = value.substring(5);
+                        }
+                        else if (value.startsWith("@id/")) {
+                            id = value.substring(4);
+                        }
+                    }
+                    else if (viewStub && "android:layout".equals(attr.getQName(attrIndex)) && value.startsWith("@layout/")) {
+                        stubLayout = symbols.intern(value.substring(8));
+                    }
+                }
+
+                final int idSymbol = (id != null)? register(id, symbols.intern(qName), stubLayout) : -1;
+                if (!"merge".equals(qName) && !"requestFocus".equals(qName) && !"tag".equals(qName)) {
+                    addView();
+                }
+                pushHierarchy(idSymbol, "LinearLayout".equals(qName) || "android.widget.LinearLayout".equals(qName));
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            final int level = --idHierarchyDepth;
+            if (frameWeighted[level]) {
+                weightedLayouts++;
+                nestedWeights += frameWeightedDescendants[level];
+                for (int i = frameFirstInclude[level]; i < includeCount; i++) {
+                    includeWeighted[i] = true;
+                }
+
+                if (level > 0) {
+                    frameWeightedDescendants[level - 1]++;
+                }
+            }
+            else if (level > 0) {
+                frameWeightedDescendants[level - 1] += frameWeightedDescendants[level];
+            }
+        }
+
+        LayoutRecord toRecord(String contentHash) {
+            final int idCount = idPositions.size();
+            final int[] includedLayouts = new int[foundLayouts.size()];
+            for (int i = 0; i < includedLayouts.length; i++) {
+                includedLayouts[i] = foundLayouts.keyAt(i);
+            }
+
+            final LayoutHierarchy hierarchy = new LayoutHierarchy(viewCount, maxDepth, weightedLayouts, nestedWeights, Arrays.copyOf(includeLayouts, includeCount), Arrays.copyOf(includeDepths, includeCount), Arrays.copyOf(includeWeighted, includeCount));
+            return new LayoutRecord(rootTag, Arrays.copyOf(foundIds, idCount), Arrays.copyOf(foundTypes, idCount), Arrays.copyOf(foundWrappers, idCount), Arrays.copyOf(foundStubLayouts, idCount), includedLayouts, contentHash, hierarchy);
+        }
+    }
+
+    private static final ThreadLocal<SAXParserFactory> sSaxParserFactory = ThreadLocal.withInitial(SAXParserFactory::newInstance);
+
+    static LayoutRecord parse(File file, Set<String> knownPlaceholderStrings, SymbolTable symbols) throws IOException, ParserConfigurationException, SAXException {
+        try (InputStream inStream = new FileInputStream(file)) {
+            return parse(inStream, file.toString(), knownPlaceholderStrings, symbols);
+        }
+    }
+
+    /**
+     * Parses the given layout XML content.
+     * @param fileName Name used to identify the layout in the error messages.
+     */
+    static LayoutRecord parse(InputStream inStream, String fileName, Set<String> knownPlaceholderStrings, SymbolTable symbols) throws IOException, ParserConfigurationException, SAXException {
+        final GenerationEvents.Span span = GenerationEvents.begin(GenerationEvents.LAYOUT_PARSE);
+        final ParserHandler handler = new ParserHandler(fileName, knownPlaceholderStrings, symbols);
+        final SAXParser parser = sSaxParserFactory.get().newSAXParser();
+        final byte[] content = BootClassPathIndex.readFully(inStream);
+        parser.parse(new ByteArrayInputStream(content), handler);
+
+        if (!handler.conflictingIds.isEmpty()) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < handler.conflictingIds.size(); i++) {
+                sb.append(", ").append(symbols.name(handler.conflictingIds.keyAt(i)));
+            }
+            throw new RuntimeException("Duplicated id " + sb + " in " + fileName);
+        }
+
+        final LayoutRecord record = handler.toRecord(ContentHash.toHex(ContentHash.newDigest().digest(content)));
+        span.end(fileName, record.ids.length);
+        return record;
+    }
+
+    private LayoutParser() {
+    }
+}
@@ -0,0 +1,55 @@
+package sword.gradle.tasks;
+
+/**
+ * Compact result of parsing a layout file.
+ * Everything is expressed in symbols from the {@link SymbolTable} used while parsing.
+ */
+final class LayoutRecord {
+    final int rootTag;
+
+    /**
+     * Ids found in the layout, in document order.
+     */
+    final int[] ids;
+
+    /**
+     * For each id, the symbol of the tag defining it, or the bitwise complement of the layout symbol for includes.
+     */
+    final int[] types;
+
+    /**
+     * For each id, the symbol of its closest wrapping id, or -1 if it is not wrapped.
+     */
+    final int[] wrappers;
+
+    /**
+     * For each id, the symbol of the layout to be inflated if it is a ViewStub, or -1 otherwise.
+     */
+    final int[] stubLayouts;
+
+    /**
+     * Distinct layouts included, in document order.
+     */
+    final int[] includedLayouts;
+
+    /**
+     * Hash of the layout file contents.
+     */
+    final String contentHash;
+
+    /**
+     * Structure of the views in the layout, without expanding includes.
+     */
+    final LayoutHierarchy hierarchy;
+
+    LayoutRecord(int rootTag, int[] ids, int[] types, int[] wrappers, int[] stubLayouts, int[] includedLayouts, String contentHash, LayoutHierarchy hierarchy) {
+        this.rootTag = rootTag;
+        this.ids = ids;
+        this.types = types;
+        this.wrappers = wrappers;
+        this.stubLayouts = stubLayouts;
+        this.includedLayouts = includedLayouts;
+        this.contentHash = contentHash;
+        this.hierarchy = hierarchy;
+    }
+}
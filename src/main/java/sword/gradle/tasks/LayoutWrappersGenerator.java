@@ -0,0 +1,1451 @@
+package sword.gradle.tasks;
+
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import static sword.gradle.tasks.CaseUtils.fromSnakeToPascalCase;
+import static sword.gradle.tasks.StringResourceUtils.obtainKnownPlaceholderStrings;
+
+/**
+ * Generates the layout wrappers, independently of Gradle.
+ *
+ * This is used by {@link CreateLayoutWrappersTask}, but it can also be used by any other build tool,
+ * either directly or through {@link WrapperGeneratorMain}. Options match the properties of the task.
+ */
+public final class LayoutWrappersGenerator {
+
+    private final HashMap<String, String> mImplicitTagNames = new HashMap<>();
+
+    private final String mPackageName;
+    private final String mLayoutInterface;
+    private final String mAndroidResourceClass;
+    private final String mEnsureNonNullFunction;
+    private final List<File> mBootClassPath;
+    private final File mInterfacesClasspath;
+    private final List<File> mResourcesDirs;
+
+    private Map<String, String> mKnownCasts = Collections.emptyMap();
+    private File mBootClassPathIndexDir = defaultCacheDir("boot-classpath-index");
+    private List<File> mIncludedResourcesDirs = Collections.emptyList();
+    private List<File> mDependencyResources = Collections.emptyList();
+    private File mDependencyLayoutIndexDir = defaultCacheDir("layout-index");
+    private Collection<String> mViewHolderLayouts = Collections.emptyList();
+    private boolean mAsyncInflation;
+    private boolean mGeneratedViewConstruction;
+    private boolean mSharedBaseClass;
+    private File mResolvedLayoutsFile;
+    private File mHierarchyReportFile;
+    private Map<String, Integer> mHierarchyBudgets = Collections.emptyMap();
+    private File mOutputSrcJar;
+    private File mOutputCacheDir = defaultCacheDir("outputs");
+    private long mOutputCacheMaxSize = 64L * 1024 * 1024;
+
+    private final SourceDirectory mSourceDirectory;
+
+    /**
+     * @param resourcesDirs Resource directories whose layouts are wrapped, merged in the same way Android merges source set overlays.
+     *                      Layouts in later directories replace the ones with the same name in the same folder of earlier ones.
+     * @param outputDir Directory where a Java file is written for each wrapper. It can be null if a srcjar is set through {@link #setOutputSrcJar(File)}.
+     */
+    public LayoutWrappersGenerator(String packageName, String layoutInterface, String androidResourceClass, String ensureNonNullFunction, List<File> bootClassPath, File interfacesClasspath, List<File> resourcesDirs, File outputDir) {
+        mPackageName = packageName;
+        mLayoutInterface = layoutInterface;
+        mAndroidResourceClass = androidResourceClass;
+        mEnsureNonNullFunction = ensureNonNullFunction;
+        mBootClassPath = new ArrayList<>(bootClassPath);
+        mInterfacesClasspath = interfacesClasspath;
+        mResourcesDirs = new ArrayList<>(resourcesDirs);
+        mSourceDirectory = (outputDir != null)? new SourceDirectory(outputDir) : null;
+
+        mImplicitTagNames.put("AutoCompleteTextView", "android.widget.AutoCompleteTextView");
+        mImplicitTagNames.put("Button", "android.widget.Button");
+        mImplicitTagNames.put("CheckBox", "android.widget.CheckBox");
+        mImplicitTagNames.put("DatePicker", "android.widget.DatePicker");
+        mImplicitTagNames.put("DigitalClock", "android.widget.DigitalClock");
+        mImplicitTagNames.put("EditText", "android.widget.EditText");
+        mImplicitTagNames.put("ExpandableListView", "android.widget.ExpandableListView");
+        mImplicitTagNames.put("FrameLayout", "android.widget.FrameLayout");
+        mImplicitTagNames.put("GridView", "android.widget.GridView");
+        mImplicitTagNames.put("HorizontalScrollView", "android.widget.HorizontalScrollView");
+        mImplicitTagNames.put("ImageButton", "android.widget.ImageButton");
+        mImplicitTagNames.put("ImageView", "android.widget.ImageView");
+        mImplicitTagNames.put("LinearLayout", "android.widget.LinearLayout");
+        mImplicitTagNames.put("ListView", "android.widget.ListView");
+        mImplicitTagNames.put("ProgressBar", "android.widget.ProgressBar");
+        mImplicitTagNames.put("RadioButton", "android.widget.RadioButton");
+        mImplicitTagNames.put("RelativeLayout", "android.widget.RelativeLayout");
+        mImplicitTagNames.put("ScrollView", "android.widget.ScrollView");
+        mImplicitTagNames.put("SeekBar", "android.widget.SeekBar");
+        mImplicitTagNames.put("Spinner", "android.widget.Spinner");
+        mImplicitTagNames.put("SurfaceView", "android.view.SurfaceView");
+        mImplicitTagNames.put("TextView", "android.widget.TextView");
+        mImplicitTagNames.put("TimePicker", "android.widget.TimePicker");
+        mImplicitTagNames.put("VideoView", "android.widget.VideoView");
+        mImplicitTagNames.put("View", "android.view.View");
+        mImplicitTagNames.put("ViewStub", "android.view.ViewStub");
+        mImplicitTagNames.put("WebView", "android.webkit.WebView");
+    }
+
+    /**
+     * Returns the given folder within the shared cache in the Gradle user home, so that the same caches are used
+     * by Gradle builds and by any other tool generating wrappers on the same machine.
+     */
+    static File defaultCacheDir(String name) {
+        final String gradleUserHome = System.getenv("GRADLE_USER_HOME");
+        final File gradleUserHomeDir = (gradleUserHome != null)? new File(gradleUserHome) : new File(System.getProperty("user.home"), ".gradle");
+        return new File(gradleUserHomeDir, "caches/sword-android-tasks/" + name);
+    }
+
+    public void setKnownCasts(Map<String, String> knownCasts) {
+        mKnownCasts = new TreeMap<>(knownCasts);
+    }
+
+    public void setBootClassPathIndexDir(File dir) {
+        mBootClassPathIndexDir = dir;
+    }
+
+    public void setIncludedResourcesDirs(List<File> dirs) {
+        mIncludedResourcesDirs = new ArrayList<>(dirs);
+    }
+
+    public void setDependencyResources(List<File> dependencies) {
+        mDependencyResources = new ArrayList<>(dependencies);
+    }
+
+    public void setDependencyLayoutIndexDir(File dir) {
+        mDependencyLayoutIndexDir = dir;
+    }
+
+    public void setViewHolderLayouts(Collection<String> layoutNames) {
+        mViewHolderLayouts = new ArrayList<>(layoutNames);
+    }
+
+    public void setAsyncInflation(boolean enabled) {
+        mAsyncInflation = enabled;
+    }
+
+    public void setGeneratedViewConstruction(boolean enabled) {
+        mGeneratedViewConstruction = enabled;
+    }
+
+    /**
+     * Sets whether all wrappers extend a common base class generated in the same package,
+     * which keeps the root view and the views looked up, instead of repeating that code in each wrapper.
+     */
+    public void setSharedBaseClass(boolean enabled) {
+        mSharedBaseClass = enabled;
+    }
+
+    /**
+     * Sets the file where the resolved layouts are written, or null to not write them.
+     */
+    public void setResolvedLayoutsFile(File file) {
+        mResolvedLayoutsFile = file;
+    }
+
+    /**
+     * Sets the file where the hierarchy cost is reported, or null to not report it.
+     */
+    public void setHierarchyReportFile(File file) {
+        mHierarchyReportFile = file;
+    }
+
+    public void setHierarchyBudgets(Map<String, Integer> budgets) {
+        mHierarchyBudgets = new TreeMap<>(budgets);
+    }
+
+    /**
+     * Sets the srcjar file where all sources are written instead of the output directory, or null to write them into the output directory.
+     */
+    public void setOutputSrcJar(File file) {
+        mOutputSrcJar = file;
+    }
+
+    public void setOutputCacheDir(File dir) {
+        mOutputCacheDir = dir;
+    }
+
+    /**
+     * Sets the maximum size in bytes for the output cache. 0 disables it.
+     */
+    public void setOutputCacheMaxSize(long maxSize) {
+        mOutputCacheMaxSize = maxSize;
+    }
+
+    private String tagNameToType(String tagName) {
+        final String value = mImplicitTagNames.get(tagName);
+        return (value == null)? tagName : value;
+    }
+
+    private static final int CONFLICTING_ID = -2;
+    private static final String BASE_CLASS_NAME = "LayoutWrapper";
+
+    /**
+     * Ids within a layout and all its includes, in resolution order, for a single configuration.
+     * Ids found more than once are marked as {@link #CONFLICTING_ID} in types.
+     */
+    private static final class Resolution {
+        final int rootTag;
+        final IntIntMap types;
+        final IntIntMap wrappers;
+        final IntIntMap stubLayouts;
+
+        /**
+         * Hash of the layout file and all the files it includes, transitively.
+         */
+        final String contentKey;
+
+        Resolution(int rootTag, IntIntMap types, IntIntMap wrappers, IntIntMap stubLayouts, String contentKey) {
+            this.rootTag = rootTag;
+            this.types = types;
+            this.wrappers = wrappers;
+            this.stubLayouts = stubLayouts;
+            this.contentKey = contentKey;
+        }
+    }
+
+    private static void putResolved(IntIntMap types, IntIntMap wrappers, IntIntMap stubLayouts, int id, int type, int wrapping, int stubLayout) {
+        if (types.containsKey(id)) {
+            types.put(id, CONFLICTING_ID);
+            wrappers.put(id, -1);
+            stubLayouts.put(id, -1);
+        }
+        else {
+            types.put(id, type);
+            wrappers.put(id, (type == CONFLICTING_ID)? -1 : wrapping);
+            stubLayouts.put(id, (type == CONFLICTING_ID)? -1 : stubLayout);
+        }
+    }
+
+    private static Resolution findResolved(Resolution[] resolutions, IntIntMap nodes, SymbolTable symbols, int layout) {
+        final int nodeIndex = nodes.get(layout, -1);
+        final Resolution resolution = (nodeIndex >= 0)? resolutions[nodeIndex] : null;
+        if (resolution == null) {
+            throw new RuntimeException("Unable to find included layout " + symbols.name(layout));
+        }
+
+        return resolution;
+    }
+
+    private static void appendResolved(Resolution included, int nowWrapping, IntIntMap types, IntIntMap wrappers, IntIntMap stubLayouts) {
+        final int count = included.types.size();
+        for (int i = 0; i < count; i++) {
+            final int wrapping = included.wrappers.valueAt(i);
+            putResolved(types, wrappers, stubLayouts, included.types.keyAt(i), included.types.valueAt(i), (wrapping >= 0)? wrapping : nowWrapping, included.stubLayouts.valueAt(i));
+        }
+    }
+
+    /**
+     * Resolves the given layout, composing the resolutions of its includes, that must be already resolved.
+     *
+     * @param resolutions Resolutions in the folder being resolved, indexed by the include graph node that the given nodes map assigns to each layout symbol.
+     */
+    private static Resolution resolve(LayoutRecord record, Resolution[] resolutions, IntIntMap nodes, SymbolTable symbols) {
+        final IntIntMap types = new IntIntMap();
+        final IntIntMap wrappers = new IntIntMap();
+        final IntIntMap stubLayouts = new IntIntMap();
+        final IntIntMap includedLayouts = new IntIntMap(4);
+        final int idCount = record.ids.length;
+        for (int i = 0; i < idCount; i++) {
+            final int id = record.ids[i];
+            final int type;
+            if (record.types[i] >= 0) {
+                type = record.types[i];
+            }
+            else {
+                final int layoutName = ~record.types[i];
+                includedLayouts.put(layoutName, 0);
+                final Resolution included = findResolved(resolutions, nodes, symbols, layoutName);
+                appendResolved(included, id, types, wrappers, stubLayouts);
+                type = included.rootTag;
+            }
+
+            putResolved(types, wrappers, stubLayouts, id, type, record.wrappers[i], record.stubLayouts[i]);
+        }
+
+        final ArrayList<String> contentParts = new ArrayList<>(record.includedLayouts.length + 1);
+        contentParts.add(record.contentHash);
+        for (int layoutName : record.includedLayouts) {
+            final Resolution included = findResolved(resolutions, nodes, symbols, layoutName);
+            if (!includedLayouts.containsKey(layoutName)) {
+                appendResolved(included, -1, types, wrappers, stubLayouts);
+            }
+            contentParts.add(symbols.name(layoutName) + '=' + included.contentKey);
+        }
+
+        return new Resolution(record.rootTag, types, wrappers, stubLayouts, ContentHash.ofStrings(contentParts));
+    }
+
+    /**
+     * Layout merged among all its variants.
+     * Ids are in resolution order, and the ones not present in all variants are marked as nullable.
+     */
+    private static final class LayoutModel {
+        final int rootTag;
+        final int[] ids;
+        final int[] types;
+        final int[] wrappers;
+
+        /**
+         * For each id, the symbol of the layout to be inflated if it is a ViewStub, or -1 otherwise.
+         */
+        final int[] stubLayouts;
+        final boolean[] nullable;
+
+        /**
+         * Hash of all layout files involved in this model, among all variants.
+         */
+        final String contentKey;
+
+        LayoutModel(int rootTag, int[] ids, int[] types, int[] wrappers, int[] stubLayouts, boolean[] nullable, String contentKey) {
+            this.rootTag = rootTag;
+            this.ids = ids;
+            this.types = types;
+            this.wrappers = wrappers;
+            this.stubLayouts = stubLayouts;
+            this.nullable = nullable;
+            this.contentKey = contentKey;
+        }
+
+        boolean hasNullableIds() {
+            for (boolean value : nullable) {
+                if (value) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private ResolvedLayouts.Layout resolvedLayout(String layoutName, LayoutModel model, SymbolTable symbols, List<String> interfaces) {
+        final int idCount = model.ids.length;
+        final String[] ids = new String[idCount];
+        final String[] types = new String[idCount];
+        final String[] wrappingIds = new String[idCount];
+        for (int i = 0; i < idCount; i++) {
+            ids[i] = symbols.name(model.ids[i]);
+            types[i] = tagNameToType(symbols.name(model.types[i]));
+            wrappingIds[i] = (model.wrappers[i] >= 0)? symbols.name(model.wrappers[i]) : null;
+        }
+
+        return new ResolvedLayouts.Layout(layoutName, tagNameToType(symbols.name(model.rootTag)), ids, types, wrappingIds, model.nullable, interfaces);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, ParserConfigurationException, SAXException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            }
+            else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Parses concurrently all layouts in all the given folders.
+     * The returned list matches the order of the given folder names,
+     * and each map has layout name symbols as keys and positions in the returned record list as values.
+     */
+    private static List<IntIntMap> parseLayoutFolders(ExecutorService executor, SharedAnalysis analysis, Map<String, List<File>> layoutFolders, List<String> layoutFolderNames, Set<String> knownPlaceholderStrings, String placeholderKey, List<LayoutRecord> records) throws IOException, ParserConfigurationException, SAXException {
+        final SymbolTable symbols = analysis.symbols();
+        final ArrayList<Future<LayoutRecord>> futures = new ArrayList<>();
+        final ArrayList<IntIntMap> result = new ArrayList<>();
+        for (String folderName : layoutFolderNames) {
+            final IntIntMap folderRecords = new IntIntMap();
+            for (File file : layoutFolders.get(folderName)) {
+                final String fileName = file.getName();
+                final int layoutName = symbols.intern(fileName.substring(0, fileName.length() - 4));
+                folderRecords.put(layoutName, futures.size());
+                futures.add(executor.submit(() -> analysis.layout(file, knownPlaceholderStrings, placeholderKey)));
+            }
+            result.add(folderRecords);
+        }
+
+        for (Future<LayoutRecord> future : futures) {
+            records.add(await(future));
+        }
+
+        return result;
+    }
+
+    /**
+     * Merges the resolutions of a layout among all configurations.
+     * @param resolutions Resolution of the layout for each configuration, or null for the configurations resolving exactly as the default one.
+     */
+    private static LayoutModel mergeLayout(List<String> layoutFolderNames, Resolution[] resolutions, SymbolTable symbols, int layoutName) {
+        final IntIntMap idsAndTypes = new IntIntMap();
+        final IntIntMap idsAndWrappers = new IntIntMap();
+        final IntIntMap idsAndStubLayouts = new IntIntMap();
+        final BitSet presentIds = new BitSet();
+        BitSet commonIds = null;
+        int rootTag = -1;
+
+        final ArrayList<String> contentParts = new ArrayList<>();
+        final int configurationCount = resolutions.length;
+        for (int configIndex = 0; configIndex < configurationCount; configIndex++) {
+            final Resolution resolution = resolutions[configIndex];
+            if (resolution == null) {
+                continue;
+            }
+            contentParts.add(layoutFolderNames.get(configIndex) + '=' + resolution.contentKey);
+
+            final IntIntMap typesResult = resolution.types;
+            final IntIntMap wrapResult = resolution.wrappers;
+            final int resolvedRootTag = resolution.rootTag;
+            if (rootTag < 0) {
+                rootTag = resolvedRootTag;
+            }
+            else if (rootTag != resolvedRootTag) {
+                throw new RuntimeException("Layout " + symbols.name(layoutName) + " has root " + symbols.name(rootTag) + " in the default folder, but " + symbols.name(resolvedRootTag) + " in " + layoutFolderNames.get(configIndex));
+            }
+
+            final BitSet configIds = new BitSet();
+            final int resultCount = typesResult.size();
+            for (int i = 0; i < resultCount; i++) {
+                final int type = typesResult.valueAt(i);
+                if (type == CONFLICTING_ID) {
+                    continue;
+                }
+
+                final int id = typesResult.keyAt(i);
+                final int wrapping = wrapResult.get(id, -1);
+                final int stubLayout = resolution.stubLayouts.get(id, -1);
+                final int position = idsAndTypes.indexOfKey(id);
+                if (position < 0) {
+                    idsAndTypes.put(id, type);
+                    idsAndWrappers.put(id, wrapping);
+                    idsAndStubLayouts.put(id, stubLayout);
+                }
+                else {
+                    if (idsAndTypes.valueAt(position) != type) {
+                        throw new RuntimeException("View id '" + symbols.name(id) + "' in layout " + symbols.name(layoutName) + " has type " + symbols.name(idsAndTypes.valueAt(position)) + " in some variants, but " + symbols.name(type) + " in " + layoutFolderNames.get(configIndex));
+                    }
+
+                    if (idsAndStubLayouts.valueAt(position) != stubLayout) {
+                        throw new RuntimeException("View stub '" + symbols.name(id) + "' in layout " + symbols.name(layoutName) + " does not inflate the same layout in all variants");
+                    }
+
+                    // If the wrapping view is not the same in all variants, it will be looked up from the root
+                    if (idsAndWrappers.valueAt(position) != wrapping) {
+                        idsAndWrappers.setValueAt(position, -1);
+                    }
+                }
+                configIds.set(id);
+            }
+
+            presentIds.or(configIds);
+            if (commonIds == null) {
+                commonIds = configIds;
+            }
+            else {
+                commonIds.and(configIds);
+            }
+        }
+
+        final int idCount = idsAndTypes.size();
+        final int[] ids = new int[idCount];
+        final int[] types = new int[idCount];
+        final int[] wrappers = new int[idCount];
+        final int[] stubLayouts = new int[idCount];
+        final boolean[] nullable = new boolean[idCount];
+        for (int i = 0; i < idCount; i++) {
+            ids[i] = idsAndTypes.keyAt(i);
+            types[i] = idsAndTypes.valueAt(i);
+            wrappers[i] = idsAndWrappers.valueAt(i);
+            stubLayouts[i] = idsAndStubLayouts.valueAt(i);
+            nullable[i] = !commonIds.get(ids[i]);
+        }
+
+        // Views within an include that is not present in all variants are looked up from the root, as the include may be missing.
+        // Repeated until no change, as marking a view nullable may affect the views within it.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < idCount; i++) {
+                final int wrapperPosition = (wrappers[i] >= 0)? idsAndTypes.indexOfKey(wrappers[i]) : -1;
+                if (wrapperPosition >= 0 && nullable[wrapperPosition]) {
+                    wrappers[i] = -1;
+                    nullable[i] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        return new LayoutModel(rootTag, ids, types, wrappers, stubLayouts, nullable, ContentHash.ofStrings(contentParts));
+    }
+
+    /**
+     * Receives each layout model as soon as it is complete. It may be called concurrently.
+     */
+    private interface ModelConsumer {
+        void accept(int layoutName, LayoutModel model) throws IOException, ParserConfigurationException, SAXException;
+    }
+
+    /**
+     * Resolves all layouts in the default folder, merging the results for all the variants,
+     * and hands each model to the given consumer as soon as it is complete.
+     *
+     * Layouts are processed concurrently in waves, in reverse-topological include order, where each wave
+     * only contains layouts whose includes are already resolved. The resolution of a layout is composed from
+     * the ones of its includes, and released once all layouts including it are resolved.
+     * Then, only the resolutions for the frontier of the include graph are kept at the same time.
+     *
+     * @param folderRecords Parsed layouts for each folder. The first one is expected to be the default one.
+     * @param includedIndexes Layouts from other modules that can be included, but are not wrapped. Local layouts take precedence.
+     */
+    private static void resolveLayouts(ExecutorService executor, List<String> layoutFolderNames, List<IntIntMap> folderRecords, List<LayoutRecord> records, List<SharedAnalysis.LayoutIndex> includedIndexes, SymbolTable symbols, ModelConsumer consumer) throws IOException, ParserConfigurationException, SAXException {
+        final LayoutConfigurations configurations = new LayoutConfigurations(folderRecords, records, includedIndexes);
+        final int configurationCount = configurations.size();
+        final IntIntMap defaultFolder = folderRecords.get(0);
+
+        // Include graph among all configurations, reachable from the default folder
+        final IntIntMap nodes = new IntIntMap();
+        final ArrayList<int[]> includes = new ArrayList<>();
+        for (int i = 0; i < defaultFolder.size(); i++) {
+            nodes.put(defaultFolder.keyAt(i), nodes.size());
+        }
+
+        for (int nodeIndex = 0; nodeIndex < nodes.size(); nodeIndex++) {
+            final int layout = nodes.keyAt(nodeIndex);
+            final IntIntMap nodeIncludes = new IntIntMap(4);
+            for (int configIndex = 0; configIndex < configurationCount; configIndex++) {
+                final LayoutRecord record = configurations.get(configIndex, layout);
+                if (record != null) {
+                    for (int included : record.includedLayouts) {
+                        if (!nodeIncludes.containsKey(included) && configurations.contains(included)) {
+                            nodeIncludes.put(included, 0);
+                            if (!nodes.containsKey(included)) {
+                                nodes.put(included, nodes.size());
+                            }
+                        }
+                    }
+                }
+            }
+
+            final int[] includedNodes = new int[nodeIncludes.size()];
+            for (int i = 0; i < includedNodes.length; i++) {
+                includedNodes[i] = nodes.get(nodeIncludes.keyAt(i), -1);
+            }
+            includes.add(includedNodes);
+        }
+
+        final int nodeCount = nodes.size();
+        final int[] pendingIncludes = new int[nodeCount];
+        final int[] pendingIncluders = new int[nodeCount];
+        final ArrayList<IntIntMap> includers = new ArrayList<>(nodeCount);
+        for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+            includers.add(new IntIntMap(4));
+        }
+
+        for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+            pendingIncludes[nodeIndex] = includes.get(nodeIndex).length;
+            for (int included : includes.get(nodeIndex)) {
+                includers.get(included).put(nodeIndex, 0);
+                pendingIncluders[included]++;
+            }
+        }
+
+        // Resolutions and variant dependencies are indexed by node, which is dense within this module
+        final Resolution[][] resolutions = new Resolution[configurationCount][nodeCount];
+        final BitSet[] dependsOnVariant = new BitSet[configurationCount];
+        for (int configIndex = 0; configIndex < configurationCount; configIndex++) {
+            dependsOnVariant[configIndex] = new BitSet(nodeCount);
+        }
+
+        ArrayList<Integer> wave = new ArrayList<>();
+        for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+            if (pendingIncludes[nodeIndex] == 0) {
+                wave.add(nodeIndex);
+            }
+        }
+
+        int processedCount = 0;
+        while (!wave.isEmpty()) {
+            final ArrayList<Future<Void>> futures = new ArrayList<>(wave.size());
+            for (int nodeIndex : wave) {
+                final int layout = nodes.keyAt(nodeIndex);
+                futures.add(executor.submit(() -> {
+                    final GenerationEvents.Span span = GenerationEvents.begin(GenerationEvents.INCLUDE_RESOLUTION);
+                    final Resolution[] layoutResolutions = resolveNode(configurations, folderRecords, nodes, resolutions, dependsOnVariant, symbols, nodeIndex);
+                    final LayoutModel model = defaultFolder.containsKey(layout)? mergeLayout(layoutFolderNames, layoutResolutions, symbols, layout) : null;
+                    int resolvedFolderCount = 0;
+                    for (Resolution resolution : layoutResolutions) {
+                        if (resolution != null) {
+                            resolvedFolderCount++;
+                        }
+                    }
+                    span.end(symbols.name(layout), resolvedFolderCount);
+
+                    if (model != null) {
+                        consumer.accept(layout, model);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+
+            final ArrayList<Integer> nextWave = new ArrayList<>();
+            for (int nodeIndex : wave) {
+                for (int included : includes.get(nodeIndex)) {
+                    if (--pendingIncluders[included] == 0) {
+                        release(resolutions, included);
+                    }
+                }
+
+                if (pendingIncluders[nodeIndex] == 0) {
+                    release(resolutions, nodeIndex);
+                }
+
+                final IntIntMap nodeIncluders = includers.get(nodeIndex);
+                for (int i = 0; i < nodeIncluders.size(); i++) {
+                    final int includer = nodeIncluders.keyAt(i);
+                    if (--pendingIncludes[includer] == 0) {
+                        nextWave.add(includer);
+                    }
+                }
+            }
+
+            processedCount += wave.size();
+            wave = nextWave;
+        }
+
+        if (processedCount < nodeCount) {
+            final StringBuilder sb = new StringBuilder();
+            for (int nodeIndex = 0; nodeIndex < nodeCount; nodeIndex++) {
+                if (pendingIncludes[nodeIndex] > 0) {
+                    sb.append((sb.length() == 0)? "" : ", ").append(symbols.name(nodes.keyAt(nodeIndex)));
+                }
+            }
+            throw new RuntimeException("Circular include found among layouts " + sb);
+        }
+    }
+
+    private static void release(Resolution[][] resolutions, int nodeIndex) {
+        for (Resolution[] configResolutions : resolutions) {
+            configResolutions[nodeIndex] = null;
+        }
+    }
+
+    /**
+     * Resolves the given layout in all configurations where it is defined, assuming that all its includes are already resolved.
+     * Configurations not overriding this layout nor any of its includes resolve exactly as the default one,
+     * and they share the default resolution.
+     *
+     * @return Resolution for each configuration, where the configurations sharing the default resolution are null.
+     */
+    private static Resolution[] resolveNode(LayoutConfigurations configurations, List<IntIntMap> folderRecords, IntIntMap nodes, Resolution[][] resolutions, BitSet[] dependsOnVariant, SymbolTable symbols, int nodeIndex) {
+        final int layout = nodes.keyAt(nodeIndex);
+        final int configurationCount = configurations.size();
+        final Resolution[] result = new Resolution[configurationCount];
+        for (int configIndex = 0; configIndex < configurationCount; configIndex++) {
+            final LayoutRecord record = configurations.get(configIndex, layout);
+            if (record == null) {
+                continue;
+            }
+
+            boolean depends = configIndex == 0 || folderRecords.get(configIndex).containsKey(layout);
+            for (int i = 0; !depends && i < record.includedLayouts.length; i++) {
+                final BitSet includedDepends = dependsOnVariant[configIndex];
+                synchronized (includedDepends) {
+                    final int includedNode = nodes.get(record.includedLayouts[i], -1);
+                    depends = includedNode >= 0 && includedDepends.get(includedNode);
+                }
+            }
+
+            if (depends) {
+                result[configIndex] = resolve(record, resolutions[configIndex], nodes, symbols);
+                if (configIndex > 0) {
+                    synchronized (dependsOnVariant[configIndex]) {
+                        dependsOnVariant[configIndex].set(nodeIndex);
+                    }
+                }
+            }
+
+            resolutions[configIndex][nodeIndex] = (depends || configIndex == 0)? result[configIndex] : resolutions[0][nodeIndex];
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the callback interface and the inflateAsync factory methods into the wrapper class being generated.
+     */
+    private static void writeAsyncInflation(PrintWriter writer, String classSimpleName) {
+        writer.println();
+        writer.println("    public interface Callback {");
+        writer.println("        void onInflated(@NonNull " + classSimpleName + " layout);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * Inflates the layout in the given background executor and delivers the wrapper through the callback executor.");
+        writer.println("     * The parent is only used to generate the layout params of the root view, it is not modified.");
+        writer.println("     * If the inflation fails, the callback is not called, and the failure is thrown within the callback executor instead.");
+        writer.println("     */");
+        writer.println("    public static void inflateAsync(@NonNull LayoutInflater inflater, ViewGroup parent, @NonNull Executor backgroundExecutor, @NonNull Executor callbackExecutor, @NonNull Callback callback) {");
+        writer.println("        backgroundExecutor.execute(() -> {");
+        writer.println("            final " + classSimpleName + " layout;");
+        writer.println("            try {");
+        writer.println("                layout = createWithLayoutInflater(inflater, parent);");
+        writer.println("            }");
+        writer.println("            catch (RuntimeException | Error e) {");
+        writer.println("                callbackExecutor.execute(() -> {");
+        writer.println("                    throw e;");
+        writer.println("                });");
+        writer.println("                return;");
+        writer.println("            }");
+        writer.println();
+        writer.println("            callbackExecutor.execute(() -> callback.onInflated(layout));");
+        writer.println("        });");
+        writer.println("    }");
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * Inflates the layout in the given background executor and delivers the wrapper in the main thread,");
+        writer.println("     * where any failure on inflating it is thrown as well.");
+        writer.println("     */");
+        writer.println("    public static void inflateAsync(@NonNull ViewGroup parent, @NonNull Executor backgroundExecutor, @NonNull Callback callback) {");
+        writer.println("        final Handler handler = new Handler(Looper.getMainLooper());");
+        writer.println("        inflateAsync(LayoutInflater.from(parent.getContext()), parent, backgroundExecutor, handler::post, callback);");
+        writer.println("    }");
+    }
+
+    /**
+     * Returns the source of the base class extended by all wrappers when a shared base class is enabled.
+     * It keeps the root view and looks up the views only once, keeping them in an array instead of a field for each view.
+     */
+    private static byte[] generateBaseClass(String packageName, String ensureNonNullFunction) {
+        final int ensureNonNullFunctionLastDotIndex = ensureNonNullFunction.lastIndexOf('.');
+        final String ensureNonNullFunctionName = (ensureNonNullFunctionLastDotIndex >= 0)? ensureNonNullFunction.substring(ensureNonNullFunctionLastDotIndex + 1) : ensureNonNullFunction;
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (PrintWriter writer = new PrintWriter(content, true)) {
+            writer.println("// This file is autogenerated. Please do not edit it.");
+            writer.println("package " + packageName + ";");
+            writer.println();
+            writer.println("import android.content.Context;");
+            writer.println("import android.view.ContextThemeWrapper;");
+            writer.println("import android.view.LayoutInflater;");
+            writer.println("import android.view.View;");
+            writer.println("import android.view.ViewGroup;");
+            writer.println();
+            writer.println("import androidx.annotation.IdRes;");
+            writer.println("import androidx.annotation.LayoutRes;");
+            writer.println("import androidx.annotation.NonNull;");
+            writer.println("import androidx.annotation.StyleRes;");
+            if (ensureNonNullFunctionLastDotIndex >= 0) {
+                writer.println();
+                writer.println("import static " + ensureNonNullFunction + ";");
+            }
+            writer.println();
+            writer.println("/**");
+            writer.println(" * Common implementation of all layout wrappers in this package.");
+            writer.println(" */");
+            writer.println("public abstract class " + BASE_CLASS_NAME + "<V extends View> {");
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    private final V mRoot;");
+            writer.println("    private final View[] mViews;");
+            writer.println();
+            writer.println("    " + BASE_CLASS_NAME + "(@NonNull V root, int viewCount) {");
+            writer.println("        " + ensureNonNullFunctionName + "(root);");
+            writer.println("        mRoot = root;");
+            writer.println("        mViews = new View[viewCount];");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    public final V view() {");
+            writer.println("        return mRoot;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    /**");
+            writer.println("     * Returns the view with the given id within the given parent, looking it up only the first time.");
+            writer.println("     */");
+            writer.println("    @SuppressWarnings(\"unchecked\")");
+            writer.println("    final <T extends View> T find(int index, @NonNull View parent, @IdRes int id) {");
+            writer.println("        View view = mViews[index];");
+            writer.println("        if (view == null) {");
+            writer.println("            view = parent.findViewById(id);");
+            writer.println("            mViews[index] = view;");
+            writer.println("        }");
+            writer.println();
+            writer.println("        return (T) view;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    static View attach(@NonNull LayoutInflater inflater, @LayoutRes int layoutId, @NonNull ViewGroup parent) {");
+            writer.println("        final int position = parent.getChildCount();");
+            writer.println("        inflater.inflate(layoutId, parent, true);");
+            writer.println("        return parent.getChildAt(position);");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    static Context themedContext(@StyleRes int styleResId, @NonNull ViewGroup parent) {");
+            writer.println("        return new ContextThemeWrapper(parent.getContext(), styleResId);");
+            writer.println("    }");
+            writer.println("}");
+        }
+
+        return content.toByteArray();
+    }
+
+    /**
+     * Returns the source of a RecyclerView.ViewHolder for the given layout, where all views are looked up once when created.
+     */
+    private byte[] generateViewHolder(String packageName, String androidResourceClassName, String ensureNonNullFunction, String layoutName, LayoutModel model, SymbolTable symbols) throws IOException {
+        final int ensureNonNullFunctionLastDotIndex = ensureNonNullFunction.lastIndexOf('.');
+        final String ensureNonNullFunctionName = (ensureNonNullFunctionLastDotIndex >= 0)? ensureNonNullFunction.substring(ensureNonNullFunctionLastDotIndex + 1) : ensureNonNullFunction;
+        final String rootType = tagNameToType(symbols.name(model.rootTag));
+        final String classSimpleName = fromSnakeToPascalCase(layoutName) + "ViewHolder";
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (PrintWriter writer = new PrintWriter(content, true)) {
+            writer.println("// This file is autogenerated. Please do not edit it.");
+            writer.println("package " + packageName + ";");
+            writer.println();
+            writer.println("import " + androidResourceClassName + ";");
+            writer.println();
+            writer.println("import android.view.LayoutInflater;");
+            writer.println("import android.view.ViewGroup;");
+            writer.println();
+            writer.println("import androidx.annotation.NonNull;");
+            if (model.hasNullableIds()) {
+                writer.println("import androidx.annotation.Nullable;");
+            }
+            writer.println("import androidx.recyclerview.widget.RecyclerView;");
+            if (ensureNonNullFunctionLastDotIndex >= 0) {
+                writer.println();
+                writer.println("import static " + ensureNonNullFunction + ";");
+            }
+            writer.println();
+
+            writer.println("public final class " + classSimpleName + " extends RecyclerView.ViewHolder {");
+            writer.println();
+            writer.println("    /**");
+            writer.println("     * View type for this holder, stable among all layouts in the app.");
+            writer.println("     */");
+            writer.println("    public static final int VIEW_TYPE = R.layout." + layoutName + ";");
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    private final " + rootType + " mRoot;");
+            for (int i = 0; i < model.ids.length; i++) {
+                writer.println("    private final " + tagNameToType(symbols.name(model.types[i])) + ' ' + symbols.name(model.ids[i]) + ";");
+            }
+
+            writer.println();
+            writer.println("    private " + classSimpleName + "(@NonNull " + rootType + " root) {");
+            writer.println("        super(root);");
+            writer.println("        " + ensureNonNullFunctionName + "(root);");
+            writer.println("        mRoot = root;");
+
+            final IntIntMap assignedIds = new IntIntMap(model.ids.length);
+            for (int i = 0; i < model.ids.length; i++) {
+                final String id = symbols.name(model.ids[i]);
+                final int wrapper = model.wrappers[i];
+                final int wrapperPosition = (wrapper >= 0)? assignedIds.get(wrapper, -1) : -1;
+                final String source = (wrapperPosition >= 0 && !model.nullable[wrapperPosition])? symbols.name(wrapper) : "root";
+                writer.println("        " + id + " = " + source + ".findViewById(R.id." + id + ");");
+                assignedIds.put(model.ids[i], i);
+            }
+            writer.println("    }");
+
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    public " + rootType + " view() {");
+            writer.println("        return mRoot;");
+            writer.println("    }");
+
+            for (int i = 0; i < model.ids.length; i++) {
+                final String id = symbols.name(model.ids[i]);
+                writer.println();
+                writer.println(model.nullable[i]? "    @Nullable" : "    @NonNull");
+                writer.println("    public " + tagNameToType(symbols.name(model.types[i])) + ' ' + id + "() {");
+                writer.println("        return " + id + ";");
+                writer.println("    }");
+            }
+
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    public static " + classSimpleName + " createWithLayoutInflater(@NonNull LayoutInflater inflater, @NonNull ViewGroup parent) {");
+            writer.println("        return new " + classSimpleName + "((" + rootType + ") inflater.inflate(R.layout." + layoutName + ", parent, false));");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @NonNull");
+            writer.println("    public static " + classSimpleName + " create(@NonNull ViewGroup parent) {");
+            writer.println("        return createWithLayoutInflater(LayoutInflater.from(parent.getContext()), parent);");
+            writer.println("    }");
+            writer.println("}");
+        }
+
+        return content.toByteArray();
+    }
+
+    /**
+     * Generates all Java classes wrapping the defined layouts, with an analysis that is discarded afterwards.
+     */
+    public void generate() {
+        try (SharedAnalysis analysis = new SharedAnalysis()) {
+            generate(analysis);
+        }
+        catch (IOException e) {
+            throw new UnsupportedOperationException("Failure on creating layout wrappers", e);
+        }
+    }
+
+    /**
+     * Generates all Java classes wrapping the defined layouts, reusing the given analysis.
+     */
+    void generate(SharedAnalysis analysis) {
+        final File interfacesClasspath = mInterfacesClasspath;
+        final List<File> bootClassPath = mBootClassPath;
+        final File bootClassPathIndexDir = mBootClassPathIndexDir;
+        final SymbolTable symbols = analysis.symbols();
+
+        try {
+            // Later indexes take precedence. Then, dependencies are added first, and the first one defining a layout must be the last one
+            final ArrayList<SharedAnalysis.LayoutIndex> includedIndexes = new ArrayList<>();
+            final File dependencyIndexDir = mDependencyLayoutIndexDir;
+            final ArrayList<File> dependencies = new ArrayList<>(mDependencyResources);
+            for (int i = dependencies.size() - 1; i >= 0; i--) {
+                includedIndexes.add(analysis.dependencyLayoutIndex(dependencies.get(i), dependencyIndexDir));
+            }
+
+            for (File includedResourcesDir : mIncludedResourcesDirs) {
+                includedIndexes.add(analysis.layoutIndex(includedResourcesDir));
+            }
+
+            final List<File> resourcesDirs = mResourcesDirs;
+            final Map<String, List<File>> layoutFolders = FileDiscovery.findResourceFolders(resourcesDirs, "layout", ".xml");
+            if (!layoutFolders.containsKey("layout")) {
+                throw new RuntimeException("Unable to find subfolder 'layout' in " + resourcesDirs);
+            }
+
+            final HashMap<String, File> defaultLayoutFiles = new HashMap<>();
+            for (File file : layoutFolders.get("layout")) {
+                defaultLayoutFiles.put(file.getName(), file);
+            }
+
+            final ArrayList<String> layoutFolderNames = new ArrayList<>(layoutFolders.keySet());
+
+            final String packageName = mPackageName;
+            final String packagePath = packageName.replace('.', '/') + '/';
+            final GeneratedSources sources = (mOutputSrcJar != null)? new SourceJar(mOutputSrcJar) : mSourceDirectory;
+            if (sources == null) {
+                throw new UnsupportedOperationException("Either an output directory or an output source jar is required");
+            }
+
+            final String layoutInterface = mLayoutInterface;
+            final String ensureNonNullFunction = mEnsureNonNullFunction;
+            final String androidResourceClassName = mAndroidResourceClass;
+            if (androidResourceClassName.length() <= 2 && !androidResourceClassName.endsWith(".R")) {
+                throw new UnsupportedOperationException("Android resource class is expected to be a full qualified class reference where the class is called 'R'. But it was " + androidResourceClassName);
+            }
+
+            final boolean asyncInflation = mAsyncInflation;
+            final boolean generatedViewConstruction = mGeneratedViewConstruction;
+            final boolean sharedBaseClass = mSharedBaseClass;
+            final HashSet<String> viewHolderLayouts = new HashSet<>(mViewHolderLayouts);
+            final int viewMethodName = symbols.intern("view");
+            final Map<String, String> knownCasts = new TreeMap<>(mKnownCasts);
+
+            final long outputCacheMaxSize = mOutputCacheMaxSize;
+            final OutputCache outputCache = (outputCacheMaxSize > 0)? new OutputCache(mOutputCacheDir, outputCacheMaxSize) : null;
+            // Keys are required even without cache, in order to know which generated sources can be kept
+            final ArrayList<String> taskKeyParts = new ArrayList<>();
+            taskKeyParts.add(OutputCache.generatorKey());
+            taskKeyParts.add(packageName);
+            taskKeyParts.add(layoutInterface);
+            taskKeyParts.add(androidResourceClassName);
+            taskKeyParts.add(ensureNonNullFunction);
+            taskKeyParts.add(Boolean.toString(asyncInflation));
+            taskKeyParts.add(Boolean.toString(generatedViewConstruction));
+            taskKeyParts.add(Boolean.toString(sharedBaseClass));
+            taskKeyParts.add(knownCasts.toString());
+            taskKeyParts.add(BootClassPathIndex.computeKey(bootClassPath));
+            final String interfacesAbi = InterfaceAnalysis.abiFingerprint(interfacesClasspath);
+            taskKeyParts.add(interfacesAbi);
+            final String taskKey = ContentHash.ofStrings(taskKeyParts);
+
+            // Only resolved if any layout is not found in the output cache, and then only once for all of them
+            final FutureTask<TypeHierarchy> typeHierarchyTask = new FutureTask<>(() -> analysis.typeHierarchy(bootClassPath, bootClassPathIndexDir, interfacesClasspath, interfacesAbi, knownCasts));
+            final FutureTask<List<InterfaceAnalysis.ResolvedInterface>> interfacesTask = new FutureTask<>(() -> {
+                try {
+                    return analysis.interfaces(interfacesClasspath, interfacesAbi, bootClassPath);
+                }
+                catch (ClassNotFoundException e) {
+                    throw new UnsupportedOperationException("Failure on creating layout wrappers", e);
+                }
+            });
+
+            final File hierarchyReportFile = mHierarchyReportFile;
+            final Map<String, Integer> hierarchyBudgets = mHierarchyBudgets;
+            HierarchyAnalysis.checkBudgets(hierarchyBudgets);
+            final List<String> budgetViolations = new ArrayList<>();
+
+            final File resolvedLayoutsFile = mResolvedLayoutsFile;
+            final ConcurrentHashMap<String, ResolvedLayouts.Layout> resolvedLayouts = (resolvedLayoutsFile != null)? new ConcurrentHashMap<>() : null;
+
+            final Set<String> knownPlaceholderStrings = obtainKnownPlaceholderStrings(resourcesDirs);
+            final String placeholderKey = ContentHash.ofStrings(new TreeSet<>(knownPlaceholderStrings));
+
+            sources.start();
+            if (sharedBaseClass) {
+                final String baseClassPath = packagePath + BASE_CLASS_NAME + ".java";
+                final String baseClassKey = ContentHash.ofStrings(Arrays.asList(taskKey, BASE_CLASS_NAME));
+                if (!sources.keep(baseClassPath, baseClassKey)) {
+                    sources.write(baseClassPath, baseClassKey, generateBaseClass(packageName, ensureNonNullFunction));
+                }
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            try {
+                final ArrayList<LayoutRecord> records = new ArrayList<>();
+                final List<IntIntMap> folderRecords = parseLayoutFolders(executor, analysis, layoutFolders, layoutFolderNames, knownPlaceholderStrings, placeholderKey, records);
+                final IntIntMap defaultFolder = folderRecords.get(0);
+                final HashSet<String> layoutNames = new HashSet<>();
+                final HashSet<String> layoutsWithVariants = new HashSet<>();
+                for (int i = 0; i < defaultFolder.size(); i++) {
+                    layoutNames.add(symbols.name(defaultFolder.keyAt(i)));
+                    for (int folderIndex = 1; folderIndex < folderRecords.size(); folderIndex++) {
+                        if (folderRecords.get(folderIndex).containsKey(defaultFolder.keyAt(i))) {
+                            layoutsWithVariants.add(symbols.name(defaultFolder.keyAt(i)));
+                        }
+                    }
+                }
+
+                for (String layoutName : viewHolderLayouts) {
+                    if (!layoutNames.contains(layoutName)) {
+                        throw new RuntimeException("View holder requested for layout " + layoutName + ", but there is no such layout in the default layout folder");
+                    }
+                }
+
+                // Wrappers of layouts inflated from a ViewStub require a factory to wrap the inflated view.
+                // Stubs inflating layouts from other modules are exposed as plain ViewStub instances.
+                final HashSet<String> stubTargets = new HashSet<>();
+                final ArrayList<LayoutRecord> allRecords = new ArrayList<>(records);
+                for (SharedAnalysis.LayoutIndex index : includedIndexes) {
+                    allRecords.addAll(index.records);
+                }
+
+                for (LayoutRecord record : allRecords) {
+                    for (int stubLayout : record.stubLayouts) {
+                        if (stubLayout >= 0 && layoutNames.contains(symbols.name(stubLayout))) {
+                            stubTargets.add(symbols.name(stubLayout));
+                        }
+                    }
+                }
+
+                resolveLayouts(executor, layoutFolderNames, folderRecords, records, includedIndexes, symbols, (layoutSymbol, model) -> {
+                    final String layoutName = symbols.name(layoutSymbol);
+                    final String classSimpleName = fromSnakeToPascalCase(layoutName) + "Layout";
+                    final String outPath = packagePath + classSimpleName + ".java";
+                    final boolean viewHolder = viewHolderLayouts.contains(layoutName);
+                    final String viewHolderPath = packagePath + fromSnakeToPascalCase(layoutName) + "ViewHolder.java";
+                    final String viewHolderFileKey = ContentHash.ofStrings(Arrays.asList(taskKey, model.contentKey, viewHolderPath.substring(packagePath.length())));
+
+                    // Stubs inflating a layout of this module are exposed through the wrapper of that layout
+                    final boolean stubTarget = stubTargets.contains(layoutName);
+                    final String[] stubWrappers = new String[model.ids.length];
+                    boolean hasStubWrappers = false;
+                    final StringBuilder stubKey = new StringBuilder(stubTarget? "stubTarget" : "");
+                    for (int i = 0; i < model.ids.length; i++) {
+                        final String stubLayout = (model.stubLayouts[i] >= 0)? symbols.name(model.stubLayouts[i]) : null;
+                        if (stubLayout != null && layoutNames.contains(stubLayout)) {
+                            stubWrappers[i] = fromSnakeToPascalCase(stubLayout) + "Layout";
+                            hasStubWrappers = true;
+                            stubKey.append(',').append(stubLayout);
+                        }
+                    }
+
+                    final String outFileKey = ContentHash.ofStrings(Arrays.asList(taskKey, model.contentKey, stubKey.toString(), outPath.substring(packagePath.length())));
+                    final String interfacesKey = (outputCache != null && resolvedLayouts != null)? ContentHash.ofStrings(Arrays.asList(taskKey, model.contentKey, stubKey.toString(), "interfaces")) : null;
+
+                    // Sources written by the previous generation are kept untouched if nothing changed for them
+                    if (resolvedLayouts == null && sources.keep(outPath, outFileKey) && (!viewHolder || sources.keep(viewHolderPath, viewHolderFileKey))) {
+                        return;
+                    }
+
+                    final byte[] cachedOut = (outputCache != null)? outputCache.read(outFileKey) : null;
+                    final byte[] cachedViewHolder = (cachedOut != null && viewHolder)? outputCache.read(viewHolderFileKey) : null;
+                    if (cachedOut != null && (!viewHolder || cachedViewHolder != null)) {
+                        sources.write(outPath, outFileKey, cachedOut);
+                        if (viewHolder) {
+                            sources.write(viewHolderPath, viewHolderFileKey, cachedViewHolder);
+                        }
+
+                        if (interfacesKey == null) {
+                            return;
+                        }
+
+                        final byte[] cachedInterfaces = outputCache.read(interfacesKey);
+                        if (cachedInterfaces != null) {
+                            final String joinedInterfaces = new String(cachedInterfaces, StandardCharsets.UTF_8);
+                            final List<String> interfaces = joinedInterfaces.isEmpty()? Collections.emptyList() : Arrays.asList(joinedInterfaces.split("\n"));
+                            resolvedLayouts.put(layoutName, resolvedLayout(layoutName, model, symbols, interfaces));
+                            return;
+                        }
+                    }
+
+                    // Concurrent callers wait for the one running each task
+                    typeHierarchyTask.run();
+                    interfacesTask.run();
+                    final TypeHierarchy typeHierarchy = await(typeHierarchyTask);
+                    final List<InterfaceAnalysis.ResolvedInterface> resolvedInterfaces = await(interfacesTask);
+                    final ConcurrentHashMap<Long, Boolean> castResults = typeHierarchy.castResults();
+
+                    // Only views present in all variants can satisfy an interface getter
+                    final IntIntMap idsAndTypesToMatch = new IntIntMap(model.ids.length + 1);
+                    for (int i = 0; i < model.ids.length; i++) {
+                        if (!model.nullable[i] && stubWrappers[i] == null) {
+                            idsAndTypesToMatch.put(model.ids[i], model.types[i]);
+                        }
+                    }
+                    idsAndTypesToMatch.put(viewMethodName, model.rootTag);
+
+                    final GenerationEvents.Span castSpan = GenerationEvents.begin(GenerationEvents.CAST_CHECK);
+                    int castCheckCount = 0;
+                    final ArrayList<String> matchingInterfaces = new ArrayList<>();
+                    for (InterfaceAnalysis.ResolvedInterface resolvedInterface : resolvedInterfaces) {
+                        final IntIntMap methods = resolvedInterface.methodsAndTypes;
+                        boolean allMatching = true;
+                        for (int i = 0; i < methods.size(); i++) {
+                            final int tag = idsAndTypesToMatch.get(methods.keyAt(i), -1);
+                            if (tag < 0) {
+                                allMatching = false;
+                                break;
+                            }
+
+                            final int target = methods.valueAt(i);
+                            final long castKey = ((long) tag << 32) | target;
+                            Boolean castable = castResults.get(castKey);
+                            if (castable == null) {
+                                castable = typeHierarchy.canBeCasted(tagNameToType(symbols.name(tag)), symbols.name(target));
+                                castResults.put(castKey, castable);
+                                castCheckCount++;
+                            }
+
+                            if (!castable) {
+                                allMatching = false;
+                                break;
+                            }
+                        }
+
+                        if (allMatching) {
+                            matchingInterfaces.add(resolvedInterface.name);
+                        }
+                    }
+                    castSpan.end(layoutName, castCheckCount);
+
+                    if (resolvedLayouts != null) {
+                        resolvedLayouts.put(layoutName, resolvedLayout(layoutName, model, symbols, matchingInterfaces));
+                        if (interfacesKey != null) {
+                            outputCache.store(interfacesKey, String.join("\n", matchingInterfaces).getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+
+                    final String rootType = tagNameToType(symbols.name(model.rootTag));
+
+                    final int ensureNonNullFunctionLastDotIndex = ensureNonNullFunction.lastIndexOf('.');
+                    final String ensureNonNullFunctionName = (ensureNonNullFunctionLastDotIndex >= 0)? ensureNonNullFunction.substring(ensureNonNullFunctionLastDotIndex + 1) : ensureNonNullFunction;
+
+                    final ViewConstructionGenerator viewConstruction = (generatedViewConstruction && !layoutsWithVariants.contains(layoutName))?
+                            ViewConstructionGenerator.forLayout(defaultLayoutFiles.get(layoutName + ".xml"), mImplicitTagNames) : null;
+
+                    final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+                    try (PrintWriter writer = new PrintWriter(outContent, true)) {
+                        writer.println("// This file is autogenerated. Please do not edit it.");
+                        writer.println("package " + packageName + ";");
+                        writer.println();
+                        writer.println("import " + layoutInterface + ";");
+                        writer.println("import " + androidResourceClassName + ";");
+                        writer.println();
+                        if (!sharedBaseClass || viewConstruction != null) {
+                            writer.println("import android.content.Context;");
+                        }
+                        if (asyncInflation) {
+                            writer.println("import android.os.Handler;");
+                            writer.println("import android.os.Looper;");
+                        }
+                        if (!sharedBaseClass) {
+                            writer.println("import android.view.ContextThemeWrapper;");
+                        }
+                        writer.println("import android.view.LayoutInflater;");
+                        if (stubTarget) {
+                            writer.println("import android.view.View;");
+                        }
+                        writer.println("import android.view.ViewGroup;");
+                        if (hasStubWrappers) {
+                            writer.println("import android.view.ViewStub;");
+                        }
+                        writer.println();
+                        writer.println("import androidx.annotation.NonNull;");
+                        if (model.hasNullableIds()) {
+                            writer.println("import androidx.annotation.Nullable;");
+                        }
+                        writer.println("import androidx.annotation.StyleRes;");
+                        if (asyncInflation) {
+                            writer.println();
+                            writer.println("import java.util.concurrent.Executor;");
+                        }
+                        if (ensureNonNullFunctionLastDotIndex >= 0 && !sharedBaseClass) {
+                            writer.println();
+                            writer.println("import static " + ensureNonNullFunction + ";");
+                        }
+                        writer.println();
+
+                        final String extensions;
+                        if (matchingInterfaces.isEmpty()) {
+                            extensions = "";
+                        }
+                        else {
+                            StringBuilder sb = null;
+                            for (String interfName : matchingInterfaces) {
+                                if (sb == null) {
+                                    sb = new StringBuilder(" implements ");
+                                }
+                                else {
+                                    sb.append(", ");
+                                }
+                                sb.append(interfName);
+                            }
+                            extensions = sb.toString();
+                        }
+
+                        // With a shared base class, the root and the views that are not stubs are kept by the base class
+                        final String superclass = sharedBaseClass? " extends " + BASE_CLASS_NAME + '<' + rootType + '>' : "";
+                        final String root = sharedBaseClass? "view()" : "mRoot";
+                        int foundViewCount = 0;
+                        writer.println("public final class " + classSimpleName + superclass + extensions + " {");
+                        writer.println();
+
+                        if (!sharedBaseClass) {
+                            writer.println("    @NonNull");
+                            writer.println("    private final " + rootType + " mRoot;");
+                        }
+                        for (int i = 0; i < model.ids.length; i++) {
+                            if (!sharedBaseClass || stubWrappers[i] != null) {
+                                final String fieldType = (stubWrappers[i] != null)? stubWrappers[i] : tagNameToType(symbols.name(model.types[i]));
+                                writer.println("    private " + fieldType + ' ' + symbols.name(model.ids[i]) + ";");
+                            }
+                            else {
+                                foundViewCount++;
+                            }
+                        }
+
+                        if (!sharedBaseClass || hasStubWrappers) {
+                            writer.println();
+                        }
+                        writer.println("    private " + classSimpleName + "(@NonNull " + rootType + " root) {");
+                        if (sharedBaseClass) {
+                            writer.println("        super(root, " + foundViewCount + ");");
+                        }
+                        else {
+                            writer.println("        " + ensureNonNullFunctionName + "(root);");
+                            writer.println("        mRoot = root;");
+                        }
+                        writer.println("    }");
+
+                        if (stubTarget) {
+                            writer.println();
+                            writer.println("    /**");
+                            writer.println("     * Wraps the view inflated by a ViewStub, for the wrappers of the layouts containing it.");
+                            writer.println("     */");
+                            writer.println("    @NonNull");
+                            writer.println("    static " + classSimpleName + " wrapInflatedStub(@NonNull View view) {");
+                            writer.println("        return new " + classSimpleName + "((" + rootType + ") view);");
+                            writer.println("    }");
+                        }
+
+                        if (!sharedBaseClass) {
+                            writer.println();
+                            writer.println("    @NonNull");
+                            writer.println("    public " + rootType + " view() {");
+                            writer.println("        return mRoot;");
+                            writer.println("    }");
+                        }
+
+                        int foundViewIndex = 0;
+                        for (int i = 0; i < model.ids.length; i++) {
+                            final String id = symbols.name(model.ids[i]);
+                            final String wrapping = (model.wrappers[i] >= 0)? symbols.name(model.wrappers[i]) + "()" : root;
+                            writer.println();
+                            writer.println(model.nullable[i]? "    @Nullable" : "    @NonNull");
+                            if (sharedBaseClass && stubWrappers[i] == null) {
+                                writer.println("    public " + tagNameToType(symbols.name(model.types[i])) + ' ' + id + "() {");
+                                writer.println("        return find(" + foundViewIndex++ + ", " + wrapping + ", R.id." + id + ");");
+                                writer.println("    }");
+                                continue;
+                            }
+
+                            if (stubWrappers[i] != null) {
+                                // The field is qualified, as the local variable may hide it
+                                writer.println("    public " + stubWrappers[i] + ' ' + id + "() {");
+                                writer.println("        if (" + id + " == null) {");
+                                writer.println("            final ViewStub stub = " + wrapping + ".findViewById(R.id." + id + ");");
+                                if (model.nullable[i]) {
+                                    writer.println("            if (stub != null) {");
+                                    writer.println("                this." + id + " = " + stubWrappers[i] + ".wrapInflatedStub(stub.inflate());");
+                                    writer.println("            }");
+                                }
+                                else {
+                                    writer.println("            this." + id + " = " + stubWrappers[i] + ".wrapInflatedStub(stub.inflate());");
+                                }
+                            }
+                            else {
+                                writer.println("    public " + tagNameToType(symbols.name(model.types[i])) + ' ' + id + "() {");
+                                writer.println("        if (" + id + " == null) {");
+                                writer.println("            " + id + " = " + wrapping + ".findViewById(R.id." + id + ");");
+                            }
+                            writer.println("        }");
+                            writer.println();
+                            writer.println("        return " + id + ";");
+                            writer.println("    }");
+                        }
+
+                        writer.println();
+                        writer.println("    @NonNull");
+                        writer.println("    public static " + classSimpleName + " attachWithLayoutInflater(@NonNull LayoutInflater inflater, @NonNull ViewGroup parent) {");
+                        if (sharedBaseClass) {
+                            writer.println("        return new " + classSimpleName + "((" + rootType + ") attach(inflater, R.layout." + layoutName + ", parent));");
+                        }
+                        else {
+                            writer.println("        final int position = parent.getChildCount();");
+                            writer.println("        inflater.inflate(R.layout." + layoutName + ", parent, true);");
+                            writer.println("        return new " + classSimpleName + "((" + rootType + ") parent.getChildAt(position));");
+                        }
+                        writer.println("    }");
+                        writer.println();
+                        writer.println("    @NonNull");
+                        writer.println("    public static " + classSimpleName + " createWithLayoutInflater(@NonNull LayoutInflater inflater, ViewGroup parent) {");
+                        writer.println("        return new " + classSimpleName + "((" + rootType + ") inflater.inflate(R.layout." + layoutName + ", parent, false));");
+                        writer.println("    }");
+                        if (viewConstruction != null) {
+                            writer.println();
+                            viewConstruction.writeBuildMethod(writer, rootType);
+                        }
+
+                        writer.println();
+                        writer.println("    @NonNull");
+                        writer.println("    public static " + classSimpleName + " create(@NonNull ViewGroup parent) {");
+                        if (viewConstruction != null) {
+                            writer.println("        return new " + classSimpleName + "(build(parent.getContext()));");
+                        }
+                        else {
+                            writer.println("        return createWithLayoutInflater(LayoutInflater.from(parent.getContext()), parent);");
+                        }
+                        writer.println("    }");
+                        writer.println();
+                        writer.println("    @NonNull");
+                        writer.println("    public static " + classSimpleName + " createWithTheme(@StyleRes int styleResId, @NonNull ViewGroup parent) {");
+                        if (sharedBaseClass) {
+                            if (viewConstruction != null) {
+                                writer.println("        return new " + classSimpleName + "(build(themedContext(styleResId, parent)));");
+                            }
+                            else {
+                                writer.println("        return createWithLayoutInflater(LayoutInflater.from(themedContext(styleResId, parent)), parent);");
+                            }
+                        }
+                        else {
+                            writer.println("        final Context context = parent.getContext();");
+                            writer.println("        final Context themedContext = new ContextThemeWrapper(context, styleResId);");
+                            if (viewConstruction != null) {
+                                writer.println("        return new " + classSimpleName + "(build(themedContext));");
+                            }
+                            else {
+                                writer.println("        return createWithLayoutInflater(LayoutInflater.from(themedContext), parent);");
+                            }
+                        }
+                        writer.println("    }");
+
+                        if (asyncInflation) {
+                            writeAsyncInflation(writer, classSimpleName);
+                        }
+                        writer.println("}");
+                    }
+
+                    sources.write(outPath, outFileKey, outContent.toByteArray());
+                    if (outputCache != null) {
+                        outputCache.store(outFileKey, outContent.toByteArray());
+                    }
+
+                    if (viewHolder) {
+                        final byte[] viewHolderContent = generateViewHolder(packageName, androidResourceClassName, ensureNonNullFunction, layoutName, model, symbols);
+                        sources.write(viewHolderPath, viewHolderFileKey, viewHolderContent);
+                        if (outputCache != null) {
+                            outputCache.store(viewHolderFileKey, viewHolderContent);
+                        }
+                    }
+                });
+
+                // Removes the wrappers of layouts that no longer exist
+                sources.finish();
+
+                if (hierarchyReportFile != null || !hierarchyBudgets.isEmpty()) {
+                    final HierarchyAnalysis hierarchyAnalysis = new HierarchyAnalysis(new LayoutConfigurations(folderRecords, records, includedIndexes));
+                    budgetViolations.addAll(hierarchyAnalysis.analyze(layoutFolderNames, folderRecords, symbols, hierarchyBudgets, hierarchyReportFile));
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+
+            if (resolvedLayoutsFile != null) {
+                ResolvedLayouts.write(resolvedLayoutsFile, new TreeMap<>(resolvedLayouts).values());
+            }
+
+            if (outputCache != null) {
+                outputCache.trim();
+            }
+
+            if (!budgetViolations.isEmpty()) {
+                throw new RuntimeException("Layout hierarchy budgets exceeded:\n  " + String.join("\n  ", budgetViolations));
+            }
+        }
+        catch (IOException | ParserConfigurationException | SAXException e) {
+            throw new UnsupportedOperationException("Failure on creating layout wrappers", e);
+        }
+    }
+}
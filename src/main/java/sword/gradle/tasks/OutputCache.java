@@ -0,0 +1,187 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Content-addressable cache of generated files, shared by all builds of the same user.
+ *
+ * Entries are keyed by a hash of everything that can affect the generated file, and restored by copying them.
+ * The total size is bounded, evicting the least recently used entries first.
+ */
+final class OutputCache {
+
+    private static String sGeneratorKey;
+
+    private final File mDir;
+    private final long mMaxSize;
+    private boolean mModified;
+
+    OutputCache(File dir, long maxSize) {
+        mDir = dir;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns a key identifying the code generating the files, in order to discard any entry
+     * generated by a different version of these tasks.
+     */
+    static synchronized String generatorKey() throws IOException {
+        if (sGeneratorKey == null) {
+            final CodeSource codeSource = OutputCache.class.getProtectionDomain().getCodeSource();
+            final URL location = (codeSource != null)? codeSource.getLocation() : null;
+            File file = null;
+            if (location != null) {
+                try {
+                    file = new File(location.toURI());
+                }
+                catch (URISyntaxException | IllegalArgumentException e) {
+                    // Not a local file
+                }
+            }
+
+            // Class directories are only expected while developing these tasks.
+            // Their contents can change at any time, and then entries are never shared among JVMs.
+            sGeneratorKey = (file != null && file.isFile())? ContentHash.ofFile(file) : "dev-" + System.nanoTime();
+        }
+
+        return sGeneratorKey;
+    }
+
+    private File entryFile(String key) {
+        return new File(new File(mDir, key.substring(0, 2)), key);
+    }
+
+    /**
+     * Copies the entry for the given key into the target file, if present.
+     * @return Whether the entry was present.
+     */
+    boolean restore(String key, File target) throws IOException {
+        final File entry = entryFile(key);
+        if (!entry.isFile()) {
+            return false;
+        }
+
+        try {
+            Files.copy(entry.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            // The entry may have been evicted concurrently
+            return false;
+        }
+
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Returns the content of the entry for the given key, or null if not present.
+     */
+    byte[] read(String key) throws IOException {
+        final File entry = entryFile(key);
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        final byte[] content;
+        try {
+            content = Files.readAllBytes(entry.toPath());
+        }
+        catch (IOException e) {
+            // The entry may have been evicted concurrently
+            return null;
+        }
+
+        entry.setLastModified(System.currentTimeMillis());
+        return content;
+    }
+
+    private interface EntryWriter {
+        void write(File tempFile) throws IOException;
+    }
+
+    private synchronized void store(String key, EntryWriter writer) throws IOException {
+        final File entry = entryFile(key);
+        final File parent = entry.getParentFile();
+        parent.mkdirs();
+
+        final File tempFile = File.createTempFile(key, ".tmp", parent);
+        try {
+            writer.write(tempFile);
+            Files.move(tempFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            mModified = true;
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Stores a copy of the given file as the entry for the given key.
+     */
+    void store(String key, File source) throws IOException {
+        store(key, tempFile -> Files.copy(source.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    /**
+     * Stores the given content as the entry for the given key.
+     */
+    void store(String key, byte[] content) throws IOException {
+        store(key, tempFile -> Files.write(tempFile.toPath(), content));
+    }
+
+    /**
+     * Evicts the least recently used entries if the cache exceeds its maximum size.
+     * This is only checked if any entry has been stored by this instance.
+     */
+    synchronized void trim() {
+        if (!mModified) {
+            return;
+        }
+
+        final ArrayList<File> entries = new ArrayList<>();
+        final ArrayList<Long> lastUsed = new ArrayList<>();
+        long totalSize = 0;
+        final File[] buckets = mDir.listFiles();
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                final File[] files = bucket.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (!file.getName().endsWith(".tmp")) {
+                            entries.add(file);
+                            lastUsed.add(file.lastModified());
+                            totalSize += file.length();
+                        }
+                    }
+                }
+            }
+        }
+
+        if (totalSize > mMaxSize) {
+            final Integer[] order = new Integer[entries.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(lastUsed::get));
+
+            for (int i = 0; i < order.length && totalSize > mMaxSize; i++) {
+                final File file = entries.get(order[i]);
+                final long size = file.length();
+                if (file.delete()) {
+                    totalSize -= size;
+                }
+            }
+        }
+
+        mModified = false;
+    }
+}
@@ -0,0 +1,260 @@
+package sword.gradle.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layouts as resolved by {@link CreateLayoutWrappersTask}, including the views found through their includes,
+ * and the interfaces implemented by their wrappers.
+ *
+ * This allows other tools to know the ids and types within each layout without parsing the layout files again.
+ * Instances are read from the file written by the task when its resolvedLayoutsFile property is set.
+ */
+public final class ResolvedLayouts {
+
+    private static final int MAGIC = 0x534c524c;
+    private static final int VERSION = 1;
+
+    /**
+     * Single layout, merged among all its variants.
+     */
+    public static final class Layout {
+        private final String mName;
+        private final String mRootType;
+        private final List<String> mIds;
+        private final String[] mTypes;
+        private final String[] mWrappingIds;
+        private final boolean[] mNullable;
+        private final List<String> mInterfaces;
+        private final HashMap<String, Integer> mIdIndexes = new HashMap<>();
+
+        Layout(String name, String rootType, String[] ids, String[] types, String[] wrappingIds, boolean[] nullable, List<String> interfaces) {
+            mName = name;
+            mRootType = rootType;
+            mIds = Collections.unmodifiableList(Arrays.asList(ids));
+            mTypes = types;
+            mWrappingIds = wrappingIds;
+            mNullable = nullable;
+            mInterfaces = Collections.unmodifiableList(new ArrayList<>(interfaces));
+
+            for (int i = 0; i < ids.length; i++) {
+                mIdIndexes.put(ids[i], i);
+            }
+        }
+
+        /**
+         * Name of the layout file, without extension.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Full qualified type of the root view.
+         */
+        public String getRootType() {
+            return mRootType;
+        }
+
+        /**
+         * Ids of all views within the layout and its includes, in resolution order.
+         */
+        public List<String> getIds() {
+            return mIds;
+        }
+
+        private int indexOf(String id) {
+            final Integer index = mIdIndexes.get(id);
+            if (index == null) {
+                throw new IllegalArgumentException("No view with id " + id + " in layout " + mName);
+            }
+
+            return index;
+        }
+
+        /**
+         * Full qualified type of the view with the given id.
+         */
+        public String getType(String id) {
+            return mTypes[indexOf(id)];
+        }
+
+        /**
+         * Id of the include wrapping the view with the given id, or null if the view is not within an include with id.
+         */
+        public String getWrappingId(String id) {
+            return mWrappingIds[indexOf(id)];
+        }
+
+        /**
+         * Whether the view with the given id is missing in any variant of this layout.
+         */
+        public boolean isNullable(String id) {
+            return mNullable[indexOf(id)];
+        }
+
+        /**
+         * Full qualified names of the interfaces implemented by the wrapper of this layout.
+         */
+        public List<String> getInterfaces() {
+            return mInterfaces;
+        }
+    }
+
+    private final Map<String, Layout> mLayouts;
+
+    private ResolvedLayouts(Map<String, Layout> layouts) {
+        mLayouts = layouts;
+    }
+
+    /**
+     * All layouts, sorted by name.
+     */
+    public Collection<Layout> getLayouts() {
+        return Collections.unmodifiableCollection(mLayouts.values());
+    }
+
+    /**
+     * Returns the layout with the given name, or null if there is no such layout.
+     */
+    public Layout getLayout(String name) {
+        return mLayouts.get(name);
+    }
+
+    private static final class StringTable {
+        final HashMap<String, Integer> indexes = new HashMap<>();
+        final ArrayList<String> strings = new ArrayList<>();
+
+        void add(String value) {
+            if (value != null && !indexes.containsKey(value)) {
+                indexes.put(value, strings.size());
+                strings.add(value);
+            }
+        }
+
+        int indexOf(String value) {
+            return (value != null)? indexes.get(value) : -1;
+        }
+    }
+
+    /**
+     * Writes the given layouts into the given file, in the given order.
+     */
+    static void write(File file, Collection<Layout> layouts) throws IOException {
+        final StringTable table = new StringTable();
+        for (Layout layout : layouts) {
+            table.add(layout.mName);
+            table.add(layout.mRootType);
+            for (int i = 0; i < layout.mIds.size(); i++) {
+                table.add(layout.mIds.get(i));
+                table.add(layout.mTypes[i]);
+                table.add(layout.mWrappingIds[i]);
+            }
+
+            for (String interfaceName : layout.mInterfaces) {
+                table.add(interfaceName);
+            }
+        }
+
+        try (DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            outStream.writeInt(MAGIC);
+            outStream.writeInt(VERSION);
+            outStream.writeInt(table.strings.size());
+            for (String value : table.strings) {
+                outStream.writeUTF(value);
+            }
+
+            outStream.writeInt(layouts.size());
+            for (Layout layout : layouts) {
+                outStream.writeInt(table.indexOf(layout.mName));
+                outStream.writeInt(table.indexOf(layout.mRootType));
+                outStream.writeInt(layout.mIds.size());
+                for (int i = 0; i < layout.mIds.size(); i++) {
+                    outStream.writeInt(table.indexOf(layout.mIds.get(i)));
+                    outStream.writeInt(table.indexOf(layout.mTypes[i]));
+                    outStream.writeInt(table.indexOf(layout.mWrappingIds[i]));
+                    outStream.writeBoolean(layout.mNullable[i]);
+                }
+
+                outStream.writeInt(layout.mInterfaces.size());
+                for (String interfaceName : layout.mInterfaces) {
+                    outStream.writeInt(table.indexOf(interfaceName));
+                }
+            }
+        }
+    }
+
+    private static String readString(DataInputStream inStream, String[] strings) throws IOException {
+        final int index = inStream.readInt();
+        if (index < -1 || index >= strings.length) {
+            throw new IOException("Corrupted resolved layouts file");
+        }
+
+        return (index >= 0)? strings[index] : null;
+    }
+
+    /**
+     * Reads the layouts from a file written by {@link CreateLayoutWrappersTask}.
+     *
+     * @throws IOException if the file cannot be read, or it was not written by a compatible version of the task.
+     */
+    public static ResolvedLayouts read(File file) throws IOException {
+        try (DataInputStream inStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (inStream.readInt() != MAGIC) {
+                throw new IOException(file + " is not a resolved layouts file");
+            }
+
+            final int version = inStream.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported resolved layouts file version " + version + " in " + file);
+            }
+
+            final String[] strings = new String[inStream.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = inStream.readUTF();
+            }
+
+            final int layoutCount = inStream.readInt();
+            final LinkedHashMap<String, Layout> layouts = new LinkedHashMap<>();
+            for (int layoutIndex = 0; layoutIndex < layoutCount; layoutIndex++) {
+                final String name = readString(inStream, strings);
+                final String rootType = readString(inStream, strings);
+                final int idCount = inStream.readInt();
+                final String[] ids = new String[idCount];
+                final String[] types = new String[idCount];
+                final String[] wrappingIds = new String[idCount];
+                final boolean[] nullable = new boolean[idCount];
+                for (int i = 0; i < idCount; i++) {
+                    ids[i] = readString(inStream, strings);
+                    types[i] = readString(inStream, strings);
+                    wrappingIds[i] = readString(inStream, strings);
+                    nullable[i] = inStream.readBoolean();
+                }
+
+                final int interfaceCount = inStream.readInt();
+                final ArrayList<String> interfaces = new ArrayList<>(interfaceCount);
+                for (int i = 0; i < interfaceCount; i++) {
+                    interfaces.add(readString(inStream, strings));
+                }
+
+                layouts.put(name, new Layout(name, rootType, ids, types, wrappingIds, nullable, interfaces));
+            }
+
+            return new ResolvedLayouts(layouts);
+        }
+    }
+}
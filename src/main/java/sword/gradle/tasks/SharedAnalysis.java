@@ -0,0 +1,369 @@
+package sword.gradle.tasks;
+
+import org.xml.sax.SAXException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Analysis results that do not depend on the layouts of a single module,
+ * and then can be computed once and reused by any number of layout wrapper generations.
+ *
+ * All methods are thread-safe, and each result is computed only once, even if requested concurrently.
+ * Results depending on files that may change are kept only for the latest state of those files.
+ */
+final class SharedAnalysis implements Closeable {
+
+    /**
+     * Number of results replaced because their files changed, after which {@link #renewIfOutgrown()} starts over.
+     */
+    private static final int MAX_REPLACED_RESULTS = 1000;
+
+    /**
+     * Layouts found in the default layout folder of a resource directory.
+     */
+    static final class LayoutIndex {
+        final IntIntMap positions;
+        final List<LayoutRecord> records;
+
+        LayoutIndex(IntIntMap positions, List<LayoutRecord> records) {
+            this.positions = positions;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Result computed for the given state of its files.
+     */
+    private static final class Memo<T> {
+        final String state;
+        final FutureTask<T> task;
+
+        Memo(String state, Callable<T> computation) {
+            this.state = state;
+            task = new FutureTask<>(computation);
+        }
+    }
+
+    /**
+     * Layout file already parsed, and the state of the file when it was parsed.
+     */
+    private static final class ParsedLayout {
+        final long length;
+        final long lastModified;
+        final LayoutRecord record;
+
+        ParsedLayout(long length, long lastModified, LayoutRecord record) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.record = record;
+        }
+    }
+
+    private volatile SymbolTable mSymbols = new SymbolTable();
+    private final ConcurrentHashMap<String, FutureTask<BootClassPathIndex>> mBootClassPathIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Memo<TypeHierarchy>> mTypeHierarchies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FutureTask<BootClassLoaders.Lease>> mBootClassLoaders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Memo<List<InterfaceAnalysis.ResolvedInterface>>> mInterfaces = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Memo<LayoutIndex>> mLayoutIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ParsedLayout> mParsedLayouts = new ConcurrentHashMap<>();
+    private final AtomicInteger mReplacedResults = new AtomicInteger();
+
+    /**
+     * Symbol table to be used for everything related to this analysis.
+     */
+    SymbolTable symbols() {
+        return mSymbols;
+    }
+
+    private static <T> T memoize(ConcurrentHashMap<String, FutureTask<T>> cache, String key, Callable<T> computation) throws ExecutionException {
+        FutureTask<T> task = cache.get(key);
+        if (task == null) {
+            final FutureTask<T> newTask = new FutureTask<>(computation);
+            task = cache.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+
+        try {
+            return task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the result for the given input, computing it unless it was already computed for the same state of that input.
+     * Only the result for the latest state is kept.
+     *
+     * @param input Key identifying the files the result depends on, like a directory.
+     * @param state Key that changes whenever the result may change for the same input.
+     */
+    private <T> T memoize(ConcurrentHashMap<String, Memo<T>> cache, String input, String state, Callable<T> computation) throws ExecutionException {
+        final Memo<T> memo = cache.compute(input, (key, existing) -> {
+            if (existing != null && existing.state.equals(state)) {
+                return existing;
+            }
+            else if (existing != null) {
+                mReplacedResults.incrementAndGet();
+            }
+
+            return new Memo<>(state, computation);
+        });
+
+        // Concurrent callers wait for the one running the computation
+        memo.task.run();
+        try {
+            return memo.task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the cause of the given failure as an unchecked exception, or throws it directly if it is an error.
+     * Any checked exception expected by the caller must be checked before calling this.
+     */
+    private static RuntimeException unchecked(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new RuntimeException(cause);
+    }
+
+    private static String bootClassPathKey(List<File> bootClassPath, File indexDir) {
+        return indexDir.getAbsolutePath() + '|' + bootClassPath;
+    }
+
+    BootClassPathIndex bootClassPathIndex(List<File> bootClassPath, File indexDir) throws IOException {
+        final List<File> bootClassPathCopy = new ArrayList<>(bootClassPath);
+        try {
+            return memoize(mBootClassPathIndexes, bootClassPathKey(bootClassPathCopy, indexDir), () -> new BootClassPathIndex(bootClassPathCopy, indexDir));
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * @param interfacesAbi Fingerprint of the interfaces classpath, as returned by {@link InterfaceAnalysis#abiFingerprint(File)}.
+     */
+    TypeHierarchy typeHierarchy(List<File> bootClassPath, File indexDir, File interfacesClasspath, String interfacesAbi, Map<String, String> knownCasts) throws IOException {
+        final BootClassPathIndex index = bootClassPathIndex(bootClassPath, indexDir);
+        final TreeMap<String, String> sortedKnownCasts = new TreeMap<>(knownCasts);
+        final String input = bootClassPathKey(bootClassPath, indexDir) + '|' + interfacesClasspath.getAbsolutePath() + '|' + sortedKnownCasts;
+        try {
+            return memoize(mTypeHierarchies, input, interfacesAbi, () -> new TypeHierarchy(index, interfacesClasspath, sortedKnownCasts));
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Returns a class loader for the given boot classpath, shared with any other analysis in the JVM
+     * for the same boot classpath contents. It is kept until this analysis is closed.
+     */
+    ClassLoader bootClassLoader(List<File> bootClassPath) throws IOException {
+        final List<File> bootClassPathCopy = new ArrayList<>(bootClassPath);
+        try {
+            return memoize(mBootClassLoaders, bootClassPathCopy.toString(), () -> BootClassLoaders.acquire(bootClassPathCopy)).getClassLoader();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * @param interfacesAbi Fingerprint of the interfaces classpath, as returned by {@link InterfaceAnalysis#abiFingerprint(File)}.
+     */
+    List<InterfaceAnalysis.ResolvedInterface> interfaces(File interfacesClasspath, String interfacesAbi, List<File> bootClassPath) throws ClassNotFoundException, IOException {
+        final List<File> bootClassPathCopy = new ArrayList<>(bootClassPath);
+        final String input = interfacesClasspath.getAbsolutePath() + '|' + bootClassPathCopy;
+        try {
+            return memoize(mInterfaces, input, interfacesAbi, () -> Collections.unmodifiableList(InterfaceAnalysis.analyze(interfacesClasspath, bootClassLoader(bootClassPathCopy), mSymbols)));
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) e.getCause();
+            }
+            else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Parses the given layout file, unless it was already parsed within this analysis with the same placeholder strings,
+     * and it did not change since then. This allows generations for different variants sharing resource directories,
+     * or generations of the same variant after some layouts changed, to only parse the layouts that differ.
+     *
+     * @param placeholderKey Key identifying the given set of placeholder strings.
+     */
+    LayoutRecord layout(File file, Set<String> knownPlaceholderStrings, String placeholderKey) throws IOException, ParserConfigurationException, SAXException {
+        final String key = file.getAbsolutePath() + '|' + placeholderKey;
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final ParsedLayout parsed = mParsedLayouts.get(key);
+        if (parsed != null && parsed.length == length && parsed.lastModified == lastModified) {
+            return parsed.record;
+        }
+
+        final LayoutRecord record = LayoutParser.parse(file, knownPlaceholderStrings, mSymbols);
+        if (mParsedLayouts.put(key, new ParsedLayout(length, lastModified, record)) != null) {
+            mReplacedResults.incrementAndGet();
+        }
+        return record;
+    }
+
+    /**
+     * Returns the layouts in the default layout folder of the given resource directory.
+     * Placeholder strings are not checked, as that is expected to be done by the module owning them.
+     */
+    LayoutIndex layoutIndex(File resourceDir) throws IOException, ParserConfigurationException, SAXException {
+        final List<File> files = FileDiscovery.findResourceFolders(resourceDir, "layout", ".xml").get("layout");
+
+        // The state of the files is checked as well, as the same analysis may be reused after layouts change
+        final StringBuilder state = new StringBuilder();
+        if (files != null) {
+            for (File file : files) {
+                state.append('|').append(file.getName()).append(':').append(file.length()).append(':').append(file.lastModified());
+            }
+        }
+
+        return layoutIndex(resourceDir.getAbsolutePath(), state.toString(), () -> {
+            final IntIntMap positions = new IntIntMap();
+            final ArrayList<LayoutRecord> records = new ArrayList<>();
+            if (files != null) {
+                for (File file : files) {
+                    final String fileName = file.getName();
+                    positions.put(mSymbols.intern(fileName.substring(0, fileName.length() - 4)), records.size());
+                    records.add(LayoutParser.parse(file, Collections.emptySet(), mSymbols));
+                }
+            }
+
+            return new LayoutIndex(positions, records);
+        });
+    }
+
+    /**
+     * Returns the layouts in the default layout folder of the given dependency, that can be either an AAR file
+     * or a resource directory. AAR files are indexed only once for all builds, as described in {@link DependencyLayouts}.
+     */
+    LayoutIndex dependencyLayoutIndex(File dependency, File indexDir) throws IOException, ParserConfigurationException, SAXException {
+        if (DependencyLayouts.isArchive(dependency)) {
+            return layoutIndex(dependency.getAbsolutePath(), ContentHash.ofFile(dependency), () -> DependencyLayouts.index(dependency, indexDir, mSymbols));
+        }
+
+        return layoutIndex(DependencyLayouts.resourceDir(dependency));
+    }
+
+    private LayoutIndex layoutIndex(String input, String state, Callable<LayoutIndex> computation) throws IOException, ParserConfigurationException, SAXException {
+        try {
+            return memoize(mLayoutIndexes, input, state, computation);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            else if (e.getCause() instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) e.getCause();
+            }
+            else if (e.getCause() instanceof SAXException) {
+                throw (SAXException) e.getCause();
+            }
+
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Drops all results referring to symbols, and starts over with a new symbol table, once many results were replaced
+     * because their files changed. Symbols only used by the replaced results would never be released otherwise.
+     *
+     * This is expected to be called by long-lived processes between generations, and never while a generation is using this analysis.
+     */
+    void renewIfOutgrown() {
+        if (mReplacedResults.get() > MAX_REPLACED_RESULTS) {
+            mReplacedResults.set(0);
+            mTypeHierarchies.clear();
+            mInterfaces.clear();
+            mLayoutIndexes.clear();
+            mParsedLayouts.clear();
+            mSymbols = new SymbolTable();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (FutureTask<BootClassPathIndex> task : mBootClassPathIndexes.values()) {
+            try {
+                task.get().close();
+            }
+            catch (IOException e) {
+                exception = e;
+            }
+            catch (InterruptedException | ExecutionException e) {
+                // Nothing to close if it was never created
+            }
+        }
+        mBootClassPathIndexes.clear();
+
+        for (FutureTask<BootClassLoaders.Lease> task : mBootClassLoaders.values()) {
+            try {
+                task.get().close();
+            }
+            catch (IOException e) {
+                exception = e;
+            }
+            catch (InterruptedException | ExecutionException e) {
+                // Nothing to close if it was never created
+            }
+        }
+        mBootClassLoaders.clear();
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package sword.gradle.tasks;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.IOException;
+
+/**
+ * Build service sharing among all {@link CreateLayoutWrappersTask} instances of a build
+ * the analysis that does not depend on the layouts of each module. This includes
+ * the boot classpath hierarchy, the interfaces found in the interfaces classpath,
+ * the cast checks and the layouts of any resource directory included from other modules.
+ *
+ * It is expected to be registered once, usually from the root project, and assigned
+ * to each task through {@link CreateLayoutWrappersTask#getSharedAnalysis()}.
+ */
+public abstract class SharedLayoutAnalysisService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    private final SharedAnalysis mAnalysis = new SharedAnalysis();
+
+    SharedAnalysis getAnalysis() {
+        return mAnalysis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mAnalysis.close();
+    }
+}
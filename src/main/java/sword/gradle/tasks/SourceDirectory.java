@@ -0,0 +1,61 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generated sources written as files within a directory.
+ *
+ * The keys of the files written are kept in memory. Then, files are only kept among generations performed
+ * by the same instance, and any file from a previous generation of other instance is never removed.
+ */
+final class SourceDirectory implements GeneratedSources {
+
+    private final File mDir;
+    private final ConcurrentHashMap<String, String> mWrittenKeys = new ConcurrentHashMap<>();
+    private final Set<String> mGenerated = ConcurrentHashMap.newKeySet();
+
+    SourceDirectory(File dir) {
+        mDir = dir;
+    }
+
+    @Override
+    public void start() {
+        mGenerated.clear();
+    }
+
+    @Override
+    public boolean keep(String path, String key) {
+        if (key != null && key.equals(mWrittenKeys.get(path)) && new File(mDir, path).isFile()) {
+            mGenerated.add(path);
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void write(String path, String key, byte[] content) throws IOException {
+        final GenerationEvents.Span span = GenerationEvents.begin(GenerationEvents.FILE_EMISSION);
+        final File file = new File(mDir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+        span.end(file.getPath(), content.length);
+        mWrittenKeys.put(path, (key != null)? key : "");
+        mGenerated.add(path);
+    }
+
+    @Override
+    public void finish() {
+        for (String path : new ArrayList<>(mWrittenKeys.keySet())) {
+            if (!mGenerated.contains(path)) {
+                new File(mDir, path).delete();
+                mWrittenKeys.remove(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package sword.gradle.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generated sources written as entries of a single srcjar file.
+ *
+ * Entries are sorted by path and share a fixed timestamp, so the same sources always result in the same file.
+ * The key of each entry is stored as its comment. Entries kept from the previous generation are copied from the
+ * previous file, and the file is not written again at all if no entry changed.
+ */
+final class SourceJar implements GeneratedSources {
+
+    // Same fixed time used by other reproducible archive tools. Earlier times are not valid in the zip format
+    private static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private final File mFile;
+    private final ConcurrentHashMap<String, String> mKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, byte[]> mWritten = new ConcurrentHashMap<>();
+    private Map<String, String> mPreviousKeys = Collections.emptyMap();
+
+    SourceJar(File file) {
+        mFile = file;
+    }
+
+    private Map<String, String> readKeys() {
+        final HashMap<String, String> keys = new HashMap<>();
+        if (mFile.isFile()) {
+            try (ZipFile zipFile = new ZipFile(mFile)) {
+                final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    final String comment = entry.getComment();
+                    keys.put(entry.getName(), (comment != null)? comment : "");
+                }
+            }
+            catch (IOException e) {
+                // Not readable. It will be replaced entirely
+                keys.clear();
+            }
+        }
+
+        return keys;
+    }
+
+    @Override
+    public void start() {
+        mKeys.clear();
+        mWritten.clear();
+        mPreviousKeys = readKeys();
+    }
+
+    @Override
+    public boolean keep(String path, String key) {
+        if (key != null && key.equals(mPreviousKeys.get(path))) {
+            mKeys.put(path, key);
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void write(String path, String key, byte[] content) {
+        mKeys.put(path, (key != null)? key : "");
+        mWritten.put(path, content);
+    }
+
+    private boolean isUnchanged() {
+        if (!mKeys.keySet().equals(mPreviousKeys.keySet())) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> entry : mKeys.entrySet()) {
+            if (entry.getValue().isEmpty() || !entry.getValue().equals(mPreviousKeys.get(entry.getKey()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, String path) throws IOException {
+        final ZipEntry entry = zipFile.getEntry(path);
+        if (entry == null) {
+            throw new IOException("Missing entry " + path + " in " + zipFile.getName());
+        }
+
+        try (InputStream inStream = zipFile.getInputStream(entry)) {
+            final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int count = inStream.read(buffer);
+            while (count >= 0) {
+                outStream.write(buffer, 0, count);
+                count = inStream.read(buffer);
+            }
+
+            return outStream.toByteArray();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (mFile.isFile() && isUnchanged()) {
+            return;
+        }
+
+        final File parent = mFile.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+
+        final GenerationEvents.Span span = GenerationEvents.begin(GenerationEvents.FILE_EMISSION);
+        int size = 0;
+        final File tempFile = File.createTempFile(mFile.getName(), ".tmp", parent);
+        try {
+            try (ZipFile previous = (mWritten.size() < mKeys.size())? new ZipFile(mFile) : null;
+                    ZipOutputStream outStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(mKeys).entrySet()) {
+                    final String path = entry.getKey();
+                    final byte[] written = mWritten.get(path);
+                    final byte[] content = (written != null)? written : readEntry(previous, path);
+                    final ZipEntry zipEntry = new ZipEntry(path);
+                    zipEntry.setTime(ENTRY_TIME);
+                    if (!entry.getValue().isEmpty()) {
+                        zipEntry.setComment(entry.getValue());
+                    }
+
+                    outStream.putNextEntry(zipEntry);
+                    outStream.write(content);
+                    outStream.closeEntry();
+                    size += content.length;
+                }
+            }
+
+            Files.move(tempFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            span.end(mFile.getPath(), size);
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+}
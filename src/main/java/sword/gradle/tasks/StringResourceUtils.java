@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -161,29 +162,26 @@ final class StringResourceUtils {
         }
     }
 
-    public static Set<String> obtainKnownPlaceholderStrings(File resourceDir) throws IOException, ParserConfigurationException, SAXException {
+    /**
+     * Returns the names of the strings in the default values folder that require placeholders.
+     * Strings defined in later resource directories replace the ones with the same name in earlier ones.
+     */
+    public static Set<String> obtainKnownPlaceholderStrings(List<File> resourceDirs) throws IOException, ParserConfigurationException, SAXException {
         final Map<String, String> defaultResults = new HashMap<>();
         final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
 
-        if (resourceDir.isDirectory()) {
-            for (String subDirName : resourceDir.list()) {
-                if ("values".equals(subDirName)) {
-                    final File defaultValuesDir = new File(resourceDir, subDirName);
-                    if (defaultValuesDir.isDirectory()) {
-                        for (String fileName : defaultValuesDir.list()) {
-                            if (fileName.endsWith(".xml")) {
-                                final File file = new File(defaultValuesDir, fileName);
-                                try (InputStream inStream = new FileInputStream(file)) {
-                                    final ParserHandler handler = new ParserHandler(fileName, defaultResults);
-                                    final SAXParser parser = saxParserFactory.newSAXParser();
-                                    parser.parse(inStream, handler);
-                                }
-                            }
-                        }
-
-                        break;
+        for (File resourceDir : resourceDirs) {
+            final List<File> defaultValuesFiles = FileDiscovery.findResourceFolders(resourceDir, "values", ".xml").get("values");
+            if (defaultValuesFiles != null) {
+                final Map<String, String> dirResults = new HashMap<>();
+                for (File file : defaultValuesFiles) {
+                    try (InputStream inStream = new FileInputStream(file)) {
+                        final ParserHandler handler = new ParserHandler(file.getName(), dirResults);
+                        final SAXParser parser = saxParserFactory.newSAXParser();
+                        parser.parse(inStream, handler);
                     }
                 }
+                defaultResults.putAll(dirResults);
             }
         }
 
@@ -0,0 +1,685 @@
+package sword.gradle.tasks;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Generates the string wrappers, independently of Gradle.
+ *
+ * This is used by {@link CreateStringWrappersTask}, but it can also be used by any other build tool,
+ * either directly or through {@link WrapperGeneratorMain}. Options match the properties of the task.
+ */
+public final class StringWrappersGenerator {
+
+    private final String mPackageName;
+    private final String mContextInterface;
+    private final String mAndroidResourceClass;
+    private final String mSimpleClassName;
+    private final List<File> mResourceDirs;
+    private final File mOutputDir;
+
+    private boolean mCompactAccessors;
+    private boolean mFastFormatting;
+    private File mReportFile;
+    private File mOutputCacheDir = LayoutWrappersGenerator.defaultCacheDir("outputs");
+    private long mOutputCacheMaxSize = 64L * 1024 * 1024;
+    private Consumer<String> mInfoLogger;
+
+    public StringWrappersGenerator(String packageName, String contextInterface, String androidResourceClass, String simpleClassName, List<File> resourceDirs, File outputDir) {
+        mPackageName = packageName;
+        mContextInterface = contextInterface;
+        mAndroidResourceClass = androidResourceClass;
+        mSimpleClassName = simpleClassName;
+        mResourceDirs = new ArrayList<>(resourceDirs);
+        mOutputDir = outputDir;
+    }
+
+    public void setCompactAccessors(boolean enabled) {
+        mCompactAccessors = enabled;
+    }
+
+    public void setFastFormatting(boolean enabled) {
+        mFastFormatting = enabled;
+    }
+
+    /**
+     * Sets the file where the size of the generated class is reported, or null to not report it.
+     */
+    public void setReportFile(File file) {
+        mReportFile = file;
+    }
+
+    public void setOutputCacheDir(File dir) {
+        mOutputCacheDir = dir;
+    }
+
+    /**
+     * Sets the maximum size in bytes for the output cache. 0 disables it.
+     */
+    public void setOutputCacheMaxSize(long maxSize) {
+        mOutputCacheMaxSize = maxSize;
+    }
+
+    /**
+     * Sets where informative messages are sent, or null to discard them, which is the default.
+     */
+    public void setInfoLogger(Consumer<String> logger) {
+        mInfoLogger = logger;
+    }
+
+    private static List<String> findRequiredTypedParams(String text) {
+        final ArrayList<String> result = new ArrayList<>();
+        final int length = text.length();
+        boolean readingPlaceholder = false;
+        boolean dollarFound = false;
+        boolean lastWasBackslash = false;
+        Integer number = null;
+        for (int i = 0; i < length; i++) {
+            final char ch = text.charAt(i);
+            if (lastWasBackslash) {
+                if (ch != 'n' && ch != '\'' && ch != '"' && ch != '@') {
+                    throw new RuntimeException("Found unexpected escaped character '\\" + ch + "' in text " + text);
+                }
+                lastWasBackslash = false;
+            }
+            else if (readingPlaceholder) {
+                if (ch == 's') {
+                    // TODO: We should check any potential value in cypher
+                    result.add("String");
+                    readingPlaceholder = false;
+                    dollarFound = false;
+                }
+                else if (ch == 'd') {
+                    // TODO: We should check any potential value in cypher
+                    result.add("int");
+                    readingPlaceholder = false;
+                    dollarFound = false;
+                }
+                else if (ch >= '0' && ch <= '9') {
+                    if (dollarFound) {
+                        throw new UnsupportedOperationException("Unable to include numbers after dollar in text " + text);
+                    }
+
+                    final int cypher = ch - '0';
+                    number = (number != null)? number * 10 + cypher : cypher;
+                }
+                else if (ch == '$') {
+                    if (dollarFound) {
+                        throw new RuntimeException("Multiple dollar symbol found in the same placeholder in text " + text);
+                    }
+                    dollarFound = true;
+                }
+                else {
+                    throw new UnsupportedOperationException("Unexpected character '" + ch + "' in placeholder in text " + text);
+                }
+            }
+            else if (ch == '%') {
+                readingPlaceholder = true;
+            }
+            else if (ch == '\\') {
+                lastWasBackslash = true;
+            }
+            else if (ch == '\'' || ch == '"') {
+                throw new RuntimeException("Found unexpected character " + ch + " in text " + text + ". It needs to be escaped.");
+            }
+            else if (i == 0 && ch == '@' && !text.startsWith("@string/")) {
+                throw new RuntimeException("Found unexpected character @ at the beginning of text " + text + ". @ is reserved to reference other resources like '@string/abc'. If @ is expected to be displayed on the screen and it is in the very first position of the string, then it needs to be escaped '\\@'.");
+            }
+        }
+
+        return result;
+    }
+
+    private static final class ParserHandler extends DefaultHandler {
+
+        final String fileName;
+        final Map<String, String> defaultResults;
+        final Map<String, String> result;
+
+        String rootTag;
+        boolean validRootTag;
+        String definingStringName;
+        StringBuilder definingStringText;
+
+        ParserHandler(String fileName, Map<String, String> defaultResults, Map<String, String> result) {
+            this.fileName = fileName;
+            this.defaultResults = defaultResults;
+            this.result = result;
+        }
+
+        @Override
+        public void startElement(String uri, String lName, String qName, Attributes attr) {
+            if (rootTag == null) {
+                rootTag = qName;
+                if ("resources".equals(qName)) {
+                    validRootTag = true;
+                }
+            }
+            else if (validRootTag && "string".equals(qName)) {
+                if (definingStringName != null) {
+                    throw new RuntimeException("'string' tag defined inside another string tag at " + fileName);
+                }
+
+                final int attrCount = (attr != null) ? attr.getLength() : 0;
+                for (int attrIndex = 0; attrIndex < attrCount; attrIndex++) {
+                    if ("name".equals(attr.getQName(attrIndex))) {
+                        final String name = attr.getValue(attrIndex);
+                        if (defaultResults != null && !defaultResults.containsKey(name)) {
+                            throw new RuntimeException("Found string with name '" + name + "' at " + fileName + ", but there is no default string with that name");
+                        }
+
+                        definingStringName = name;
+                        break;
+                    }
+                }
+
+                if (definingStringName == null) {
+                    throw new RuntimeException("Found 'string' resource without 'name' attribute at " + fileName);
+                }
+            }
+            else if (validRootTag && definingStringName != null) {
+                // According to the Android string resource documentation, there are other HTML tags allowed here.
+                // TODO: Include all allowed tags here, when required
+                if (!"i".equals(qName) && !"b".equals(qName) && !"u".equals(qName)) {
+                    throw new RuntimeException("Found tag '" + qName + "' inside 'string' tag with name '" + definingStringName + "' at " + fileName);
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (validRootTag && definingStringName != null) {
+                if (definingStringText == null) {
+                    definingStringText = new StringBuilder();
+                }
+
+                for (int i = 0; i < length; i++) {
+                    definingStringText.append(ch[start + i]);
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (validRootTag && "string".equals(qName)) {
+                if (definingStringName == null) {
+                    throw new RuntimeException("Found closing tag for 'string' without an starting matching one at " + fileName);
+                }
+
+                final String name = definingStringName;
+                final String text = (definingStringText == null)? "" : definingStringText.toString();
+                definingStringName = null;
+                definingStringText = null;
+
+                if (defaultResults != null) {
+                    final List<String> defaultRequiredParams = findRequiredTypedParams(defaultResults.get(name));
+                    final List<String> actualRequiredParams = findRequiredTypedParams(text);
+                    final int defaultRequiredParamsCount = defaultRequiredParams.size();
+                    final int actualRequiredParamsCount = actualRequiredParams.size();
+                    if (defaultRequiredParamsCount != actualRequiredParamsCount) {
+                        throw new RuntimeException("String with name '" + name + "' requires " + actualRequiredParamsCount + " parameters at " + fileName + ", but the default requires " + defaultRequiredParamsCount);
+                    }
+
+                    for (int i = 0; i < defaultRequiredParamsCount; i++) {
+                        if (!defaultRequiredParams.get(i).equals(actualRequiredParams.get(i))) {
+                            throw new RuntimeException("String with name '" + name + "' at " + fileName + " does not match with its default placeholder types");
+                        }
+                    }
+                }
+
+                if (result.put(name, text) != null) {
+                    throw new RuntimeException("Duplicated string name '" + name + "' at " + fileName);
+                }
+            }
+        }
+    }
+
+    private static final class GeneratedClassStats {
+        final int methodCount;
+        final int constantCount;
+
+        GeneratedClassStats(int methodCount, int constantCount) {
+            this.methodCount = methodCount;
+            this.constantCount = constantCount;
+        }
+    }
+
+    /**
+     * Writes the templates cache and the nested Template class used by the fast formatting path.
+     * This runs on the device, so it must only rely on the Java 8 API available in Android.
+     */
+    private static void writeTemplateSupport(PrintWriter writer, String contextInterfaceSimpleClassName, int templateCount) {
+        writer.println();
+        writer.println("    private static final class Template {");
+        writer.println("        final String source;");
+        writer.println("        final Locale locale;");
+        writer.println("        final String[] literals;");
+        writer.println("        final int[] argIndexes;");
+        writer.println("        final char[] conversions;");
+        writer.println();
+        writer.println("        Template(String source, Locale locale, String[] literals, int[] argIndexes, char[] conversions) {");
+        writer.println("            this.source = source;");
+        writer.println("            this.locale = locale;");
+        writer.println("            this.literals = literals;");
+        writer.println("            this.argIndexes = argIndexes;");
+        writer.println("            this.conversions = conversions;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        /**");
+        writer.println("         * Splits the given text into literals and placeholders.");
+        writer.println("         * The returned template is never applied if any placeholder is not supported.");
+        writer.println("         *");
+        writer.println("         * @param locale Locale used by the resources to format the text, which may differ from the default one.");
+        writer.println("         */");
+        writer.println("        static Template parse(String source, Locale locale) {");
+        writer.println("            final Template unsupported = new Template(source, locale, null, null, null);");
+        writer.println("            final int length = source.length();");
+        writer.println("            final String[] literals = new String[length / 2 + 1];");
+        writer.println("            final int[] argIndexes = new int[length / 2];");
+        writer.println("            final char[] conversions = new char[length / 2];");
+        writer.println("            final StringBuilder literal = new StringBuilder();");
+        writer.println("            int count = 0;");
+        writer.println("            int nextArgIndex = 0;");
+        writer.println("            boolean digitsFound = false;");
+        writer.println("            int i = 0;");
+        writer.println("            while (i < length) {");
+        writer.println("                final char ch = source.charAt(i++);");
+        writer.println("                if (ch != '%') {");
+        writer.println("                    literal.append(ch);");
+        writer.println("                }");
+        writer.println("                else if (i < length && source.charAt(i) == '%') {");
+        writer.println("                    literal.append('%');");
+        writer.println("                    i++;");
+        writer.println("                }");
+        writer.println("                else {");
+        writer.println("                    final int numberStart = i;");
+        writer.println("                    int number = 0;");
+        writer.println("                    while (i < length && source.charAt(i) >= '0' && source.charAt(i) <= '9' && number < 1000) {");
+        writer.println("                        number = number * 10 + (source.charAt(i++) - '0');");
+        writer.println("                    }");
+        writer.println();
+        writer.println("                    final int argIndex;");
+        writer.println("                    if (i > numberStart) {");
+        writer.println("                        if (number == 0 || i == length || source.charAt(i) != '$') {");
+        writer.println("                            return unsupported;");
+        writer.println("                        }");
+        writer.println("                        argIndex = number - 1;");
+        writer.println("                        i++;");
+        writer.println("                    }");
+        writer.println("                    else {");
+        writer.println("                        argIndex = nextArgIndex++;");
+        writer.println("                    }");
+        writer.println();
+        writer.println("                    final char conversion = (i < length)? source.charAt(i++) : 0;");
+        writer.println("                    if (conversion != 's' && conversion != 'd') {");
+        writer.println("                        return unsupported;");
+        writer.println("                    }");
+        writer.println();
+        writer.println("                    digitsFound |= conversion == 'd';");
+        writer.println("                    literals[count] = literal.toString();");
+        writer.println("                    literal.setLength(0);");
+        writer.println("                    argIndexes[count] = argIndex;");
+        writer.println("                    conversions[count++] = conversion;");
+        writer.println("                }");
+        writer.println("            }");
+        writer.println();
+        writer.println("            if (digitsFound && DecimalFormatSymbols.getInstance(locale).getZeroDigit() != '0') {");
+        writer.println("                return unsupported;");
+        writer.println("            }");
+        writer.println();
+        writer.println("            literals[count] = literal.toString();");
+        writer.println("            return new Template(source, locale, Arrays.copyOf(literals, count + 1), Arrays.copyOf(argIndexes, count), Arrays.copyOf(conversions, count));");
+        writer.println("        }");
+        writer.println();
+        writer.println("        /**");
+        writer.println("         * Returns the same text as String.format for the given arguments, or null if this template cannot be applied to them.");
+        writer.println("         */");
+        writer.println("        String apply(Object[] args) {");
+        writer.println("            if (literals == null) {");
+        writer.println("                return null;");
+        writer.println("            }");
+        writer.println();
+        writer.println("            final StringBuilder sb = new StringBuilder(source.length() + 16 * argIndexes.length);");
+        writer.println("            for (int i = 0; i < argIndexes.length; i++) {");
+        writer.println("                sb.append(literals[i]);");
+        writer.println("                if (argIndexes[i] >= args.length) {");
+        writer.println("                    return null;");
+        writer.println("                }");
+        writer.println();
+        writer.println("                final Object arg = args[argIndexes[i]];");
+        writer.println("                if (conversions[i] == 'd') {");
+        writer.println("                    if (!(arg instanceof Integer)) {");
+        writer.println("                        return null;");
+        writer.println("                    }");
+        writer.println("                    sb.append(((Integer) arg).intValue());");
+        writer.println("                }");
+        writer.println("                else {");
+        writer.println("                    sb.append(arg);");
+        writer.println("                }");
+        writer.println("            }");
+        writer.println();
+        writer.println("            return sb.append(literals[argIndexes.length]).toString();");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static final Template[] templates = new Template[" + templateCount + "];");
+        writer.println();
+        writer.println("    private static String applyTemplate(@NonNull " + contextInterfaceSimpleClassName + " context, int index, @StringRes int id, Object... args) {");
+        writer.println("        // The localized text is only fetched again when the locale of the resources changes");
+        writer.println("        final Locale locale = context.getResources().getConfiguration().locale;");
+        writer.println("        Template template = templates[index];");
+        writer.println("        if (template == null || !template.locale.equals(locale)) {");
+        writer.println("            template = Template.parse(context.getString(id), locale);");
+        writer.println("            templates[index] = template;");
+        writer.println("        }");
+        writer.println();
+        writer.println("        return template.apply(args);");
+        writer.println("    }");
+    }
+
+    /**
+     * Writes the Java class wrapping all the given strings.
+     *
+     * In compact mode, strings without placeholders are not given their own method.
+     * Instead, a constant is generated for each of them, and all are resolved through a single shared accessor.
+     *
+     * With fast formatting, strings with placeholders are formatted through a template kept by the generated class,
+     * falling back to getString when the template cannot be applied.
+     */
+    private static GeneratedClassStats writeStringsClass(PrintWriter writer, String packageName, String androidResourceClassName, String contextInterfaceClassName, String classSimpleName, Map<String, String> defaultResults, boolean compact, boolean fastFormatting) {
+        final int contextInterfaceLastDotIndex = contextInterfaceClassName.lastIndexOf('.');
+        final String contextInterfaceSimpleClassName = (contextInterfaceLastDotIndex >= 0)? contextInterfaceClassName.substring(contextInterfaceLastDotIndex + 1) : contextInterfaceClassName;
+
+        writer.println("// This file is autogenerated. Please do not edit it.");
+        writer.println("package " + packageName + ";");
+        writer.println();
+        writer.println("import " + androidResourceClassName + ";");
+        if (contextInterfaceLastDotIndex >= 0) {
+            writer.println();
+            writer.println("import " + contextInterfaceClassName + ";");
+        }
+        writer.println();
+        int templateCount = 0;
+        if (fastFormatting) {
+            for (String text : defaultResults.values()) {
+                if (!findRequiredTypedParams(text).isEmpty()) {
+                    templateCount++;
+                }
+            }
+        }
+
+        writer.println("import androidx.annotation.NonNull;");
+        if (compact || templateCount > 0) {
+            writer.println("import androidx.annotation.StringRes;");
+        }
+
+        if (templateCount > 0) {
+            writer.println();
+            writer.println("import java.text.DecimalFormatSymbols;");
+            writer.println("import java.util.Arrays;");
+            writer.println("import java.util.Locale;");
+        }
+        writer.println();
+        writer.println("public final class " + classSimpleName + " {");
+
+        int methodCount = 1;
+        int constantCount = 0;
+        if (templateCount > 0) {
+            writeTemplateSupport(writer, contextInterfaceSimpleClassName, templateCount);
+            methodCount++;
+        }
+
+        if (compact) {
+            boolean constantFound = false;
+            for (String name : defaultResults.keySet()) {
+                if (findRequiredTypedParams(defaultResults.get(name)).isEmpty()) {
+                    if (!constantFound) {
+                        writer.println();
+                        constantFound = true;
+                    }
+
+                    writer.println("    @StringRes");
+                    writer.println("    public static final int " + name + " = R.string." + name + ";");
+                    constantCount++;
+                }
+            }
+
+            if (constantFound) {
+                writer.println();
+                writer.println("    /**");
+                writer.println("     * Returns the text for any of the constants in this class.");
+                writer.println("     */");
+                writer.println("    @NonNull");
+                writer.println("    public static String get(@NonNull " + contextInterfaceSimpleClassName + " context, @StringRes int id) {");
+                writer.println("        return context.getString(id);");
+                writer.println("    }");
+                methodCount++;
+            }
+        }
+
+        int templateIndex = 0;
+        for (String name : defaultResults.keySet()) {
+            final List<String> requiredParams = findRequiredTypedParams(defaultResults.get(name));
+            final int requiredParamsCount = requiredParams.size();
+            if (compact && requiredParamsCount == 0) {
+                continue;
+            }
+
+            writer.println();
+            writer.println("    @NonNull");
+            String methodSignature = "    public static String " + name + "(@NonNull " + contextInterfaceSimpleClassName + " context";
+            for (int i = 0; i < requiredParamsCount; i++) {
+                methodSignature += ", " + requiredParams.get(i) + " arg" + i;
+            }
+            writer.println(methodSignature + ") {");
+
+            String args = "";
+            for (int i = 0; i < requiredParamsCount; i++) {
+                args += ", arg" + i;
+            }
+
+            if (templateCount > 0 && requiredParamsCount > 0) {
+                writer.println("        final String result = applyTemplate(context, " + templateIndex++ + ", R.string." + name + args + ");");
+                writer.println("        return (result != null)? result : context.getString(R.string." + name + args + ");");
+            }
+            else {
+                writer.println("        return context.getString(R.string." + name + args + ");");
+            }
+            writer.println("    }");
+            methodCount++;
+        }
+
+        writer.println();
+        writer.println("    private " + classSimpleName + "() {");
+        writer.println("    }");
+        writer.println("}");
+
+        return new GeneratedClassStats(methodCount, constantCount);
+    }
+
+    /**
+     * Create the Java class wrapping all text resources
+     */
+    public void generate() {
+        try {
+            final Map<String, String> defaultResults = new HashMap<>();
+            final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+
+            final String packageName = mPackageName;
+            final String contextInterfaceClassName = mContextInterface;
+            final String androidResourceClassName = mAndroidResourceClass;
+            if (androidResourceClassName.length() <= 2 && !androidResourceClassName.endsWith(".R")) {
+                throw new UnsupportedOperationException("Android resource class is expected to be a full qualified class reference where the class is called 'R'. But it was " + androidResourceClassName);
+            }
+
+            final File outputDir = mOutputDir;
+            File currentFile = outputDir;
+            for (String split : packageName.split("\\.")) {
+                currentFile = new File(currentFile, split);
+            }
+
+            final File packageFile = currentFile;
+            packageFile.mkdirs();
+
+            final String classSimpleName = mSimpleClassName;
+            final boolean compact = mCompactAccessors;
+            final boolean fastFormatting = mFastFormatting;
+
+            final File outFile = new File(packageFile, classSimpleName + ".java");
+            final File reportFile = mReportFile;
+
+            final ArrayList<Map<String, List<File>>> valuesFolders = new ArrayList<>();
+            for (File resourceDir : mResourceDirs) {
+                valuesFolders.add(FileDiscovery.findResourceFolders(resourceDir, "values", ".xml"));
+            }
+
+            final long outputCacheMaxSize = mOutputCacheMaxSize;
+            final OutputCache outputCache = (outputCacheMaxSize > 0)? new OutputCache(mOutputCacheDir, outputCacheMaxSize) : null;
+            final String outFileKey;
+            final String reportFileKey;
+            if (outputCache != null) {
+                final ArrayList<String> keyParts = new ArrayList<>();
+                keyParts.add(OutputCache.generatorKey());
+                keyParts.add(packageName);
+                keyParts.add(contextInterfaceClassName);
+                keyParts.add(androidResourceClassName);
+                keyParts.add(classSimpleName);
+                keyParts.add(Boolean.toString(compact));
+                keyParts.add(Boolean.toString(fastFormatting));
+                for (Map<String, List<File>> folders : valuesFolders) {
+                    keyParts.add("");
+                    for (Map.Entry<String, List<File>> folder : folders.entrySet()) {
+                        for (File file : folder.getValue()) {
+                            keyParts.add(folder.getKey() + '/' + file.getName() + '=' + ContentHash.ofFile(file));
+                        }
+                    }
+                }
+
+                final String key = ContentHash.ofStrings(keyParts);
+                outFileKey = ContentHash.ofStrings(Arrays.asList(key, outFile.getName()));
+                reportFileKey = ContentHash.ofStrings(Arrays.asList(key, "report"));
+                if (outputCache.restore(outFileKey, outFile) && (reportFile == null || outputCache.restore(reportFileKey, reportFile))) {
+                    return;
+                }
+            }
+            else {
+                outFileKey = null;
+                reportFileKey = null;
+            }
+
+            for (Map<String, List<File>> folders : valuesFolders) {
+                final List<File> defaultValuesFiles = folders.get("values");
+                if (defaultValuesFiles != null) {
+                    for (File file : defaultValuesFiles) {
+                        try (InputStream inStream = new FileInputStream(file)) {
+                            final ParserHandler handler = new ParserHandler(file.getName(), null, defaultResults);
+                            final SAXParser parser = saxParserFactory.newSAXParser();
+                            parser.parse(inStream, handler);
+                        }
+                    }
+                }
+            }
+
+            final HashMap<String, Map<String, String>> variantResults = new HashMap<>();
+            for (Map<String, List<File>> folders : valuesFolders) {
+                for (Map.Entry<String, List<File>> folder : folders.entrySet()) {
+                    if (!"values".equals(folder.getKey())) {
+                        final String variantName = folder.getKey().substring(7);
+
+                        Map<String, String> results = variantResults.get(variantName);
+                        if (results == null) {
+                            results = new HashMap<>();
+                        }
+
+                        final GenerationEvents.Span span = GenerationEvents.begin(GenerationEvents.LOCALE_VALIDATION);
+                        final int previousCount = results.size();
+                        final StringBuilder fileNames = new StringBuilder();
+                        for (File file : folder.getValue()) {
+                            try (InputStream inStream = new FileInputStream(file)) {
+                                final ParserHandler handler = new ParserHandler(file.getName(), defaultResults, results);
+                                final SAXParser parser = saxParserFactory.newSAXParser();
+                                parser.parse(inStream, handler);
+                            }
+                            fileNames.append((fileNames.length() == 0)? "" : ", ").append(file.getPath());
+                        }
+                        span.end(fileNames.toString(), results.size() - previousCount);
+
+                        if (results.size() > 0) {
+                            variantResults.put(variantName, results);
+                        }
+                    }
+                }
+            }
+
+            final StringWriter content = new StringWriter();
+            final GeneratedClassStats stats;
+            try (PrintWriter writer = new PrintWriter(content)) {
+                stats = writeStringsClass(writer, packageName, androidResourceClassName, contextInterfaceClassName, classSimpleName, defaultResults, compact, fastFormatting);
+            }
+
+            final GenerationEvents.Span emissionSpan = GenerationEvents.begin(GenerationEvents.FILE_EMISSION);
+            try (PrintWriter writer = new PrintWriter(new FileOutputStream(outFile), true)) {
+                writer.print(content);
+            }
+            emissionSpan.end(outFile.getPath(), content.getBuffer().length());
+
+            if (outputCache != null) {
+                outputCache.store(outFileKey, outFile);
+            }
+
+            if (reportFile != null) {
+                final StringWriter alternativeContent = new StringWriter();
+                final GeneratedClassStats alternativeStats;
+                try (PrintWriter writer = new PrintWriter(alternativeContent)) {
+                    alternativeStats = writeStringsClass(writer, packageName, androidResourceClassName, contextInterfaceClassName, classSimpleName, defaultResults, !compact, fastFormatting);
+                }
+
+                final GeneratedClassStats perMethodStats = compact? alternativeStats : stats;
+                final GeneratedClassStats compactStats = compact? stats : alternativeStats;
+                reportFile.getParentFile().mkdirs();
+                try (PrintWriter writer = new PrintWriter(new FileOutputStream(reportFile), true)) {
+                    writer.println("Strings: " + defaultResults.size() + " (" + compactStats.constantCount + " without placeholders)");
+                    writer.println("Generated mode: " + (compact? "compact" : "per-method"));
+                    writer.println();
+                    writer.println(String.format("%-12s %10s %10s %14s", "Mode", "Methods", "Fields", "Source bytes"));
+                    writer.println(String.format("%-12s %10d %10d %14d", "per-method", perMethodStats.methodCount, perMethodStats.constantCount, (compact? alternativeContent : content).toString().length()));
+                    writer.println(String.format("%-12s %10d %10d %14d", "compact", compactStats.methodCount, compactStats.constantCount, (compact? content : alternativeContent).toString().length()));
+                }
+
+                if (mInfoLogger != null) {
+                    mInfoLogger.accept(classSimpleName + ": " + stats.methodCount + " methods generated, " + (compact? perMethodStats.methodCount : compactStats.methodCount) + " in " + (compact? "per-method" : "compact") + " mode");
+                }
+
+                if (outputCache != null) {
+                    outputCache.store(reportFileKey, reportFile);
+                }
+            }
+
+            if (outputCache != null) {
+                outputCache.trim();
+            }
+        }
+        catch (IOException | ParserConfigurationException | SAXException e) {
+            throw new UnsupportedOperationException("Failure on creating string wrappers", e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package sword.gradle.tasks;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe table assigning a unique int to each distinct string.
+ *
+ * Symbols are assigned consecutively starting at 0, so they can be used as
+ * array indexes by the consumers.
+ */
+final class SymbolTable {
+
+    private final ConcurrentHashMap<String, Integer> mSymbols = new ConcurrentHashMap<>();
+    private volatile String[] mNames = new String[256];
+    private int mSize;
+
+    /**
+     * Returns the symbol for the given name, assigning a new one if required.
+     */
+    int intern(String name) {
+        final Integer symbol = mSymbols.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+
+        synchronized (this) {
+            final Integer existing = mSymbols.get(name);
+            if (existing != null) {
+                return existing;
+            }
+
+            final int newSymbol = mSize;
+            String[] names = mNames;
+            if (newSymbol == names.length) {
+                names = Arrays.copyOf(names, newSymbol * 2);
+            }
+
+            names[newSymbol] = name;
+            mNames = names;
+            mSize = newSymbol + 1;
+            mSymbols.put(name, newSymbol);
+            return newSymbol;
+        }
+    }
+
+    String name(int symbol) {
+        return mNames[symbol];
+    }
+}
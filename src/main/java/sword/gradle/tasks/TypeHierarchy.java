@@ -0,0 +1,119 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers whether a view type can be assigned to the return type of an interface getter.
+ *
+ * Types are looked up in the boot classpath index first, and then in the interfaces classpath,
+ * with the same precedence the parent-first class loader used for the interfaces has.
+ */
+final class TypeHierarchy {
+
+    private final BootClassPathIndex mIndex;
+    private final File mInterfacesClasspath;
+    private final Map<String, String> mKnownCasts;
+    private final HashMap<String, HashSet<String>> mCastable = new HashMap<>();
+    private final ConcurrentHashMap<Long, Boolean> mCastResults = new ConcurrentHashMap<>();
+
+    TypeHierarchy(BootClassPathIndex index, File interfacesClasspath, Map<String, String> knownCasts) {
+        mIndex = index;
+        mInterfacesClasspath = interfacesClasspath;
+        mKnownCasts = knownCasts;
+    }
+
+    /**
+     * Results of the casts already checked by any generation sharing this hierarchy, keyed by the symbols of the view tag
+     * and the target type. Symbols are the ones of the analysis this hierarchy belongs to.
+     */
+    ConcurrentHashMap<Long, Boolean> castResults() {
+        return mCastResults;
+    }
+
+    private static List<String> findInterfacesClasspathSupertypes(File interfacesClasspath, String className) throws IOException {
+        final File classFile = new File(interfacesClasspath, className.replace('.', File.separatorChar) + ".class");
+        if (!classFile.isFile()) {
+            return null;
+        }
+
+        final byte[] content;
+        try (InputStream inStream = new FileInputStream(classFile)) {
+            content = BootClassPathIndex.readFully(inStream);
+        }
+
+        final ClassFileReader.ClassHeader header = ClassFileReader.readHeader(content);
+        final ArrayList<String> result = new ArrayList<>(header.interfaceNames);
+        if (header.superClassName != null) {
+            result.add(header.superClassName);
+        }
+
+        return result;
+    }
+
+    synchronized boolean canBeCasted(String source, String target) throws IOException {
+        if (source.equals(target)) {
+            return true;
+        }
+        else if ("java.lang.Object".equals(source)) {
+            return false;
+        }
+
+        HashSet<String> castable = mCastable.get(source);
+        if (castable == null) {
+            castable = new HashSet<>();
+            castable.add("java.lang.Object");
+
+            final String knownCast = mKnownCasts.get(source);
+            if (knownCast != null) {
+                castable.add(knownCast);
+                mCastable.put(source, castable);
+            }
+            else {
+                List<String> supertypes = mIndex.supertypes(source);
+                if (supertypes == null) {
+                    supertypes = findInterfacesClasspathSupertypes(mInterfacesClasspath, source);
+                }
+
+                if (supertypes != null) {
+                    castable.addAll(supertypes);
+                    mCastable.put(source, castable);
+                }
+                else {
+                    // Classes out of the boot classpath, like the ones provided by the JDK itself
+                    try {
+                        final Class<?> cls = Class.forName(source, false, null);
+                        for (Class<?> i : cls.getInterfaces()) {
+                            castable.add(i.getName());
+                        }
+
+                        final Class<?> superClass = cls.getSuperclass();
+                        if (superClass != null) {
+                            castable.add(superClass.getName());
+                        }
+                        mCastable.put(source, castable);
+                    }
+                    catch (ClassNotFoundException e) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        for (String newSource : castable) {
+            if (canBeCasted(newSource, target)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
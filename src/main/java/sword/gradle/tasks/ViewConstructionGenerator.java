@@ -0,0 +1,303 @@
+package sword.gradle.tasks;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Generates Java code building the view hierarchy of a layout directly, avoiding its runtime inflation.
+ *
+ * Only a small subset of layouts is supported: framework views without styles, and only
+ * the attributes android:id, android:layout_width, android:layout_height, android:layout_weight,
+ * android:orientation and android:text. Any other layout must be inflated.
+ */
+final class ViewConstructionGenerator {
+
+    private static final class Node {
+        final String type;
+        final String layoutParamsType;
+        final ArrayList<Node> children = new ArrayList<>();
+        String id;
+        String width;
+        String height;
+        String weight;
+        String orientation;
+        String text;
+
+        Node(String type, String layoutParamsType) {
+            this.type = type;
+            this.layoutParamsType = layoutParamsType;
+        }
+    }
+
+    private static final Map<String, String> LAYOUT_PARAMS_TYPES = new HashMap<>();
+
+    static {
+        LAYOUT_PARAMS_TYPES.put("android.widget.FrameLayout", "android.widget.FrameLayout.LayoutParams");
+        LAYOUT_PARAMS_TYPES.put("android.widget.HorizontalScrollView", "android.widget.FrameLayout.LayoutParams");
+        LAYOUT_PARAMS_TYPES.put("android.widget.LinearLayout", "android.widget.LinearLayout.LayoutParams");
+        LAYOUT_PARAMS_TYPES.put("android.widget.RelativeLayout", "android.widget.RelativeLayout.LayoutParams");
+        LAYOUT_PARAMS_TYPES.put("android.widget.ScrollView", "android.widget.FrameLayout.LayoutParams");
+    }
+
+    private static final String[] TEXT_VIEW_TYPES = {
+            "android.widget.AutoCompleteTextView",
+            "android.widget.Button",
+            "android.widget.CheckBox",
+            "android.widget.EditText",
+            "android.widget.RadioButton",
+            "android.widget.TextView"
+    };
+
+    private static final class UnsupportedLayoutException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedLayoutException() {
+            super("Unsupported layout");
+        }
+    }
+
+    private static final class ParserHandler extends DefaultHandler {
+
+        final Map<String, String> implicitTagNames;
+        final ArrayList<Node> stack = new ArrayList<>();
+        Node root;
+
+        ParserHandler(Map<String, String> implicitTagNames) {
+            this.implicitTagNames = implicitTagNames;
+        }
+
+        private static boolean isDimension(String value) {
+            if ("match_parent".equals(value) || "fill_parent".equals(value) || "wrap_content".equals(value)) {
+                return true;
+            }
+
+            return value.endsWith("dp") && isNumber(value.substring(0, value.length() - 2));
+        }
+
+        private static boolean isNumber(String value) {
+            boolean dotFound = false;
+            final int length = value.length();
+            for (int i = 0; i < length; i++) {
+                final char ch = value.charAt(i);
+                if (ch == '.' && !dotFound) {
+                    dotFound = true;
+                }
+                else if (ch < '0' || ch > '9') {
+                    return false;
+                }
+            }
+
+            return length > 0 && !(dotFound && length == 1);
+        }
+
+        private static boolean isTextView(String type) {
+            for (String textViewType : TEXT_VIEW_TYPES) {
+                if (textViewType.equals(type)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private static boolean isPlainText(String value) {
+            if (value.startsWith("@string/")) {
+                return true;
+            }
+
+            if (value.startsWith("@") || value.startsWith("?")) {
+                return false;
+            }
+
+            final int length = value.length();
+            for (int i = 0; i < length; i++) {
+                final char ch = value.charAt(i);
+                if (ch == '\\' || ch == '"' || ch == '\'' || ch < ' ') {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void startElement(String uri, String lName, String qName, Attributes attr) throws SAXException {
+            final String type = implicitTagNames.get(qName);
+            final Node parent = stack.isEmpty()? null : stack.get(stack.size() - 1);
+            final String layoutParamsType = (parent != null)? LAYOUT_PARAMS_TYPES.get(parent.type) : "android.view.ViewGroup.LayoutParams";
+            if (type == null || layoutParamsType == null) {
+                throw new UnsupportedLayoutException();
+            }
+
+            final Node node = new Node(type, layoutParamsType);
+            final int attrCount = (attr != null) ? attr.getLength() : 0;
+            for (int attrIndex = 0; attrIndex < attrCount; attrIndex++) {
+                final String name = attr.getQName(attrIndex);
+                final String value = attr.getValue(attrIndex);
+                if (name.startsWith("xmlns:") || name.startsWith("tools:")) {
+                    // Namespace declarations and design-time attributes have no effect on the hierarchy
+                    continue;
+                }
+
+                if ("android:id".equals(name) && value.startsWith("@+id/")) {
+                    node.id = value.substring(5);
+                }
+                else if ("android:id".equals(name) && value.startsWith("@id/")) {
+                    node.id = value.substring(4);
+                }
+                else if ("android:layout_width".equals(name) && isDimension(value)) {
+                    node.width = value;
+                }
+                else if ("android:layout_height".equals(name) && isDimension(value)) {
+                    node.height = value;
+                }
+                else if ("android:layout_weight".equals(name) && isNumber(value) && parent != null && "android.widget.LinearLayout".equals(parent.type)) {
+                    node.weight = value;
+                }
+                else if ("android:orientation".equals(name) && ("vertical".equals(value) || "horizontal".equals(value)) && "android.widget.LinearLayout".equals(type)) {
+                    node.orientation = value;
+                }
+                else if ("android:text".equals(name) && isTextView(type) && isPlainText(value)) {
+                    node.text = value;
+                }
+                else {
+                    throw new UnsupportedLayoutException();
+                }
+            }
+
+            if (node.width == null || node.height == null) {
+                throw new UnsupportedLayoutException();
+            }
+
+            if (parent == null) {
+                root = node;
+            }
+            else {
+                parent.children.add(node);
+            }
+            stack.add(node);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            stack.remove(stack.size() - 1);
+        }
+    }
+
+    private static final ThreadLocal<SAXParserFactory> sSaxParserFactory = ThreadLocal.withInitial(SAXParserFactory::newInstance);
+
+    private final Node mRoot;
+
+    private ViewConstructionGenerator(Node root) {
+        mRoot = root;
+    }
+
+    /**
+     * Parses the given layout file and returns a generator for it, or null if the layout
+     * uses any tag or attribute that is not supported, and must then be inflated.
+     *
+     * @param implicitTagNames Framework tag names that can be used without package, and their types.
+     */
+    static ViewConstructionGenerator forLayout(File file, Map<String, String> implicitTagNames) throws IOException, ParserConfigurationException, SAXException {
+        final ParserHandler handler = new ParserHandler(implicitTagNames);
+        final SAXParser parser = sSaxParserFactory.get().newSAXParser();
+        try (InputStream inStream = new FileInputStream(file)) {
+            parser.parse(inStream, handler);
+        }
+        catch (UnsupportedLayoutException e) {
+            return null;
+        }
+
+        return new ViewConstructionGenerator(handler.root);
+    }
+
+    private static String dimension(String value) {
+        if ("match_parent".equals(value) || "fill_parent".equals(value)) {
+            return "android.view.ViewGroup.LayoutParams.MATCH_PARENT";
+        }
+        else if ("wrap_content".equals(value)) {
+            return "android.view.ViewGroup.LayoutParams.WRAP_CONTENT";
+        }
+        else {
+            return "dp(context, " + value.substring(0, value.length() - 2) + "f)";
+        }
+    }
+
+    private static boolean usesDp(Node node) {
+        if (node.width.endsWith("dp") || node.height.endsWith("dp")) {
+            return true;
+        }
+
+        for (Node child : node.children) {
+            if (usesDp(child)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int writeNode(PrintWriter writer, Node node, int nextVariable) {
+        final int variable = nextVariable++;
+        final String name = "v" + variable;
+        writer.println("        final " + node.type + ' ' + name + " = new " + node.type + "(context);");
+        if (node.id != null) {
+            writer.println("        " + name + ".setId(R.id." + node.id + ");");
+        }
+
+        if (node.orientation != null) {
+            writer.println("        " + name + ".setOrientation(android.widget.LinearLayout." + node.orientation.toUpperCase(Locale.ROOT) + ");");
+        }
+
+        if (node.text != null) {
+            final String text = node.text.startsWith("@string/")? "R.string." + node.text.substring(8) : '"' + node.text + '"';
+            writer.println("        " + name + ".setText(" + text + ");");
+        }
+
+        final String weight = (node.weight != null)? ", " + node.weight + 'f' : "";
+        writer.println("        " + name + ".setLayoutParams(new " + node.layoutParamsType + '(' + dimension(node.width) + ", " + dimension(node.height) + weight + "));");
+
+        for (Node child : node.children) {
+            final int childVariable = nextVariable;
+            nextVariable = writeNode(writer, child, nextVariable);
+            writer.println("        " + name + ".addView(v" + childVariable + ");");
+        }
+
+        return nextVariable;
+    }
+
+    /**
+     * Writes a private static build method returning the root view, constructed with the given context.
+     */
+    void writeBuildMethod(PrintWriter writer, String rootType) {
+        writer.println("    @NonNull");
+        writer.println("    private static " + rootType + " build(@NonNull Context context) {");
+        writeNode(writer, mRoot, 0);
+        writer.println("        return v0;");
+        writer.println("    }");
+
+        if (usesDp(mRoot)) {
+            writer.println();
+            writer.println("    private static int dp(@NonNull Context context, float value) {");
+            writer.println("        final float pixels = value * context.getResources().getDisplayMetrics().density;");
+            writer.println("        final int rounded = (int) (pixels + 0.5f);");
+            writer.println("        return (rounded != 0 || value == 0)? rounded : 1;");
+            writer.println("    }");
+        }
+    }
+}
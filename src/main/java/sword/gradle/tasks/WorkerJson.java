@@ -0,0 +1,246 @@
+package sword.gradle.tasks;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the persistent worker protocol.
+ *
+ * Requests are read as a stream of JSON values, without assuming that each one is in a single line.
+ * Objects are returned as maps, arrays as lists, and numbers as Long when they are integers, or Double otherwise.
+ */
+final class WorkerJson {
+
+    private final PushbackReader mReader;
+
+    WorkerJson(Reader reader) {
+        mReader = new PushbackReader(reader, 1);
+    }
+
+    private int next() throws IOException {
+        final int ch = mReader.read();
+        if (ch < 0) {
+            throw new IOException("Unexpected end of JSON stream");
+        }
+
+        return ch;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int ch = mReader.read();
+        while (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
+            ch = mReader.read();
+        }
+
+        return ch;
+    }
+
+    private void expect(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw new IOException("Invalid JSON literal, expected " + literal);
+            }
+        }
+    }
+
+    /**
+     * Reads the next value in the stream, or returns null if the stream ends before it.
+     */
+    Object read() throws IOException {
+        final int ch = nextNonWhitespace();
+        if (ch < 0) {
+            return null;
+        }
+
+        mReader.unread(ch);
+        return readValue();
+    }
+
+    private Object readValue() throws IOException {
+        final int ch = nextNonWhitespace();
+        if (ch == '{') {
+            return readObject();
+        }
+        else if (ch == '[') {
+            return readArray();
+        }
+        else if (ch == '"') {
+            return readString();
+        }
+        else if (ch == 't') {
+            expect("rue");
+            return Boolean.TRUE;
+        }
+        else if (ch == 'f') {
+            expect("alse");
+            return Boolean.FALSE;
+        }
+        else if (ch == 'n') {
+            expect("ull");
+            return null;
+        }
+        else if (ch == '-' || (ch >= '0' && ch <= '9')) {
+            return readNumber((char) ch);
+        }
+
+        throw new IOException("Unexpected character in JSON: " + ((ch < 0)? "end of stream" : String.valueOf((char) ch)));
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+        final LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+        int ch = nextNonWhitespace();
+        if (ch == '}') {
+            return result;
+        }
+
+        while (true) {
+            if (ch != '"') {
+                throw new IOException("Expected a key in JSON object");
+            }
+
+            final String key = readString();
+            if (nextNonWhitespace() != ':') {
+                throw new IOException("Expected ':' after key " + key + " in JSON object");
+            }
+
+            result.put(key, readValue());
+            ch = nextNonWhitespace();
+            if (ch == '}') {
+                return result;
+            }
+            else if (ch != ',') {
+                throw new IOException("Expected ',' or '}' in JSON object");
+            }
+
+            ch = nextNonWhitespace();
+        }
+    }
+
+    private List<Object> readArray() throws IOException {
+        final ArrayList<Object> result = new ArrayList<>();
+        int ch = nextNonWhitespace();
+        if (ch == ']') {
+            return result;
+        }
+
+        mReader.unread(ch);
+        while (true) {
+            result.add(readValue());
+            ch = nextNonWhitespace();
+            if (ch == ']') {
+                return result;
+            }
+            else if (ch != ',') {
+                throw new IOException("Expected ',' or ']' in JSON array");
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        int ch = next();
+        while (ch != '"') {
+            if (ch == '\\') {
+                ch = next();
+                switch (ch) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        final char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char) next();
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(new String(hex), 16));
+                        }
+                        catch (NumberFormatException e) {
+                            throw new IOException("Invalid unicode escape in JSON string", e);
+                        }
+                        break;
+                    default:
+                        sb.append((char) ch);
+                        break;
+                }
+            }
+            else {
+                sb.append((char) ch);
+            }
+            ch = next();
+        }
+
+        return sb.toString();
+    }
+
+    private Number readNumber(char first) throws IOException {
+        final StringBuilder sb = new StringBuilder().append(first);
+        int ch = mReader.read();
+        while (ch >= 0 && ((ch >= '0' && ch <= '9') || ch == '.' || ch == 'e' || ch == 'E' || ch == '+' || ch == '-')) {
+            sb.append((char) ch);
+            ch = mReader.read();
+        }
+
+        if (ch >= 0) {
+            mReader.unread(ch);
+        }
+
+        final String text = sb.toString();
+        try {
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                return Long.parseLong(text);
+            }
+
+            return Double.parseDouble(text);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid JSON number " + text, e);
+        }
+    }
+
+    /**
+     * Returns the given text as a JSON string literal, including the quotes.
+     */
+    static String quote(String text) {
+        final StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            final char ch = text.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            }
+            else if (ch == '\n') {
+                sb.append("\\n");
+            }
+            else if (ch == '\r') {
+                sb.append("\\r");
+            }
+            else if (ch == '\t') {
+                sb.append("\\t");
+            }
+            else if (ch < 0x20) {
+                sb.append(String.format("\\u%04x", (int) ch));
+            }
+            else {
+                sb.append(ch);
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+}
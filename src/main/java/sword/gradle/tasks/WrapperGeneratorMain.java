@@ -0,0 +1,461 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Command line entry point to generate layout or string wrappers without Gradle.
+ *
+ * <pre>
+ * java sword.gradle.tasks.WrapperGeneratorMain layouts --packageName=com.example --resourcesDirs=src/main/res:src/free/res ...
+ * java sword.gradle.tasks.WrapperGeneratorMain strings --packageName=com.example --resourceDirs=src/main/res ...
+ * java sword.gradle.tasks.WrapperGeneratorMain --persistent_worker
+ * java sword.gradle.tasks.WrapperGeneratorMain --watch layouts --packageName=com.example ...
+ * </pre>
+ *
+ * Options are named after the properties of the Gradle tasks, and given as --name=value. Boolean options can omit
+ * their value to enable them. File list options can be repeated, or separated by the path separator.
+ * Map options can be repeated as well, giving each entry as key=value. Any argument starting with @ is replaced
+ * by the lines of the file it refers to.
+ *
+ * When --persistent_worker is given, work requests are read from the standard input following the JSON worker
+ * protocol used by Bazel, and a response is written to the standard output for each of them. All requests are
+ * served by the same analysis, so that the boot classpath, the interfaces and the included layouts are only
+ * analysed again if their contents change.
+ *
+ * When --watch is given, wrappers are generated again each time a file changes in the resource directories,
+ * or in the interfaces classpath for layout wrappers, until the process is stopped.
+ */
+public final class WrapperGeneratorMain {
+
+    private static final String LAYOUTS_COMMAND = "layouts";
+    private static final String STRINGS_COMMAND = "strings";
+    private static final String PERSISTENT_WORKER_FLAG = "--persistent_worker";
+    private static final String WATCH_FLAG = "--watch";
+
+    /**
+     * Time without changes required before generating again in watch mode, as a single save may change many files.
+     */
+    private static final long WATCH_QUIET_MILLIS = 30;
+
+    private WrapperGeneratorMain() {
+    }
+
+    private static final class Options {
+        private final TreeMap<String, List<String>> mValues = new TreeMap<>();
+        private final HashSet<String> mUsed = new HashSet<>();
+
+        Options(List<String> args) {
+            for (String arg : args) {
+                if (!arg.startsWith("--") || arg.length() == 2) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+
+                final int separator = arg.indexOf('=');
+                final String name = (separator >= 0)? arg.substring(2, separator) : arg.substring(2);
+                final String value = (separator >= 0)? arg.substring(separator + 1) : "true";
+                mValues.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+            }
+        }
+
+        private List<String> values(String name) {
+            mUsed.add(name);
+            final List<String> values = mValues.get(name);
+            return (values != null)? values : new ArrayList<>();
+        }
+
+        String optional(String name) {
+            final List<String> values = values(name);
+            if (values.size() > 1) {
+                throw new IllegalArgumentException("Option --" + name + " given more than once");
+            }
+
+            return values.isEmpty()? null : values.get(0);
+        }
+
+        String required(String name) {
+            final String value = optional(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing option --" + name);
+            }
+
+            return value;
+        }
+
+        File optionalFile(String name) {
+            final String value = optional(name);
+            return (value != null)? new File(value) : null;
+        }
+
+        File requiredFile(String name) {
+            return new File(required(name));
+        }
+
+        boolean flag(String name) {
+            final String value = optional(name);
+            if (value == null || "false".equals(value)) {
+                return false;
+            }
+            else if ("true".equals(value)) {
+                return true;
+            }
+
+            throw new IllegalArgumentException("Option --" + name + " expects true or false, but it was " + value);
+        }
+
+        long number(String name, long defaultValue) {
+            final String value = optional(name);
+            try {
+                return (value != null)? Long.parseLong(value) : defaultValue;
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Option --" + name + " expects a number, but it was " + value, e);
+            }
+        }
+
+        List<String> list(String name) {
+            final ArrayList<String> result = new ArrayList<>();
+            for (String value : values(name)) {
+                result.addAll(Arrays.asList(value.split(",")));
+            }
+
+            return result;
+        }
+
+        List<File> files(String name) {
+            final ArrayList<File> result = new ArrayList<>();
+            for (String value : values(name)) {
+                for (String path : value.split(File.pathSeparator)) {
+                    if (!path.isEmpty()) {
+                        result.add(new File(path));
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        Map<String, String> map(String name) {
+            final TreeMap<String, String> result = new TreeMap<>();
+            for (String value : values(name)) {
+                final int separator = value.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Option --" + name + " expects key=value, but it was " + value);
+                }
+
+                result.put(value.substring(0, separator), value.substring(separator + 1));
+            }
+
+            return result;
+        }
+
+        Map<String, Integer> numberMap(String name) {
+            final TreeMap<String, Integer> result = new TreeMap<>();
+            for (Map.Entry<String, String> entry : map(name).entrySet()) {
+                try {
+                    result.put(entry.getKey(), Integer.parseInt(entry.getValue()));
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Option --" + name + " expects a number for " + entry.getKey() + ", but it was " + entry.getValue(), e);
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Throws if any given option has not been read, as it is most likely a typo.
+         */
+        void checkAllUsed() {
+            for (String name : mValues.keySet()) {
+                if (!mUsed.contains(name)) {
+                    throw new IllegalArgumentException("Unknown option --" + name);
+                }
+            }
+        }
+    }
+
+    private static List<String> expandArgumentFiles(List<String> args) throws IOException {
+        final ArrayList<String> result = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("@")) {
+                for (String line : Files.readAllLines(new File(arg.substring(1)).toPath(), StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        result.add(line.trim());
+                    }
+                }
+            }
+            else {
+                result.add(arg);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the resource directories whose layouts are wrapped, given either by --resourcesDir or by --resourcesDirs.
+     */
+    private static List<File> layoutResourcesDirs(Options options) {
+        final List<File> dirs = options.files("resourcesDirs");
+        final File dir = options.optionalFile("resourcesDir");
+        if (dir != null) {
+            if (!dirs.isEmpty()) {
+                throw new IllegalArgumentException("Options --resourcesDir and --resourcesDirs cannot be given at the same time");
+            }
+
+            dirs.add(dir);
+        }
+        else if (dirs.isEmpty()) {
+            throw new IllegalArgumentException("Missing option --resourcesDirs");
+        }
+
+        return dirs;
+    }
+
+    private static LayoutWrappersGenerator createLayoutWrappersGenerator(Options options) {
+        final LayoutWrappersGenerator generator = new LayoutWrappersGenerator(options.required("packageName"), options.required("layoutInterface"), options.required("androidResourceClass"), options.required("ensureNonNullFunction"), options.files("bootClassPath"), options.requiredFile("interfacesClasspath"), layoutResourcesDirs(options), options.optionalFile("outputDir"));
+        generator.setOutputSrcJar(options.optionalFile("outputSrcJar"));
+        generator.setKnownCasts(options.map("knownCasts"));
+        generator.setIncludedResourcesDirs(options.files("includedResourcesDirs"));
+        generator.setDependencyResources(options.files("dependencyResources"));
+        generator.setViewHolderLayouts(options.list("viewHolderLayouts"));
+        generator.setAsyncInflation(options.flag("asyncInflation"));
+        generator.setGeneratedViewConstruction(options.flag("generatedViewConstruction"));
+        generator.setSharedBaseClass(options.flag("sharedBaseClass"));
+        generator.setResolvedLayoutsFile(options.optionalFile("resolvedLayoutsFile"));
+        generator.setHierarchyReportFile(options.optionalFile("hierarchyReportFile"));
+        generator.setHierarchyBudgets(options.numberMap("hierarchyBudgets"));
+        generator.setOutputCacheMaxSize(options.number("outputCacheMaxSize", 64L * 1024 * 1024));
+
+        final File bootClassPathIndexDir = options.optionalFile("bootClassPathIndexDir");
+        if (bootClassPathIndexDir != null) {
+            generator.setBootClassPathIndexDir(bootClassPathIndexDir);
+        }
+
+        final File dependencyLayoutIndexDir = options.optionalFile("dependencyLayoutIndexDir");
+        if (dependencyLayoutIndexDir != null) {
+            generator.setDependencyLayoutIndexDir(dependencyLayoutIndexDir);
+        }
+
+        final File outputCacheDir = options.optionalFile("outputCacheDir");
+        if (outputCacheDir != null) {
+            generator.setOutputCacheDir(outputCacheDir);
+        }
+
+        options.checkAllUsed();
+        return generator;
+    }
+
+    private static StringWrappersGenerator createStringWrappersGenerator(Options options) {
+        final StringWrappersGenerator generator = new StringWrappersGenerator(options.required("packageName"), options.required("contextInterface"), options.required("androidResourceClass"), options.required("simpleClassName"), options.files("resourceDirs"), options.requiredFile("outputDir"));
+        generator.setCompactAccessors(options.flag("compactAccessors"));
+        generator.setFastFormatting(options.flag("fastFormatting"));
+        generator.setReportFile(options.optionalFile("reportFile"));
+        generator.setOutputCacheMaxSize(options.number("outputCacheMaxSize", 64L * 1024 * 1024));
+
+        final File outputCacheDir = options.optionalFile("outputCacheDir");
+        if (outputCacheDir != null) {
+            generator.setOutputCacheDir(outputCacheDir);
+        }
+
+        options.checkAllUsed();
+        return generator;
+    }
+
+    private static String command(List<String> expandedArgs) {
+        if (expandedArgs.isEmpty()) {
+            throw new IllegalArgumentException("Expected command: " + LAYOUTS_COMMAND + " or " + STRINGS_COMMAND);
+        }
+
+        final String command = expandedArgs.get(0);
+        if (!LAYOUTS_COMMAND.equals(command) && !STRINGS_COMMAND.equals(command)) {
+            throw new IllegalArgumentException("Unknown command " + command + ". Expected " + LAYOUTS_COMMAND + " or " + STRINGS_COMMAND);
+        }
+
+        return command;
+    }
+
+    /**
+     * Runs a single generation, where the first argument is the command and the rest are its options.
+     */
+    private static void run(List<String> args, SharedAnalysis analysis) throws IOException {
+        final List<String> expandedArgs = expandArgumentFiles(args);
+        final String command = command(expandedArgs);
+        final Options options = new Options(expandedArgs.subList(1, expandedArgs.size()));
+        if (LAYOUTS_COMMAND.equals(command)) {
+            createLayoutWrappersGenerator(options).generate(analysis);
+        }
+        else {
+            createStringWrappersGenerator(options).generate();
+        }
+    }
+
+    private static boolean isValuesChange(Path path) {
+        final Path folder = path.getParent();
+        return path.getFileName().toString().startsWith("values") || (folder != null && folder.getFileName().toString().startsWith("values"));
+    }
+
+    private static void runWatched(ExecutorService executor, Runnable generation) throws InterruptedException {
+        final long startTime = System.nanoTime();
+        try {
+            executor.submit(generation).get();
+            System.out.println("Wrappers generated in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+        }
+        catch (ExecutionException e) {
+            System.err.println("Failure on generating wrappers. Waiting for further changes");
+            e.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Generates the wrappers, and generates them again each time the files they depend on change, until the process is stopped.
+     * The same generator is kept, which only parses again the layouts that changed, and only writes the wrappers affected by them.
+     */
+    private static void runWatch(List<String> args) throws IOException {
+        final List<String> expandedArgs = expandArgumentFiles(args);
+        final String command = command(expandedArgs);
+        final Options options = new Options(expandedArgs.subList(1, expandedArgs.size()));
+        final boolean layouts = LAYOUTS_COMMAND.equals(command);
+        final ArrayList<File> watchedDirs = new ArrayList<>();
+        final LayoutWrappersGenerator layoutGenerator;
+        final StringWrappersGenerator stringGenerator;
+        if (layouts) {
+            layoutGenerator = createLayoutWrappersGenerator(options);
+            stringGenerator = null;
+            watchedDirs.addAll(layoutResourcesDirs(options));
+            watchedDirs.add(options.requiredFile("interfacesClasspath"));
+            watchedDirs.addAll(options.files("includedResourcesDirs"));
+        }
+        else {
+            layoutGenerator = null;
+            stringGenerator = createStringWrappersGenerator(options);
+            watchedDirs.addAll(options.files("resourceDirs"));
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SharedAnalysis analysis = new SharedAnalysis(); DirectoryWatcher watcher = new DirectoryWatcher(watchedDirs)) {
+            final Runnable generation = layouts? () -> {
+                analysis.renewIfOutgrown();
+                layoutGenerator.generate(analysis);
+            } : stringGenerator::generate;
+            runWatched(executor, generation);
+            while (true) {
+                final Set<Path> changes = watcher.awaitChanges(WATCH_QUIET_MILLIS);
+                if (layouts || changes.stream().anyMatch(WrapperGeneratorMain::isValuesChange)) {
+                    runWatched(executor, generation);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> stringList(Object value) throws IOException {
+        final ArrayList<String> result = new ArrayList<>();
+        if (value != null) {
+            if (!(value instanceof List)) {
+                throw new IOException("Expected an array of strings in work request");
+            }
+
+            for (Object item : (List<?>) value) {
+                if (!(item instanceof String)) {
+                    throw new IOException("Expected an array of strings in work request");
+                }
+
+                result.add((String) item);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Serves work requests until the standard input is closed. Each request is run in a separate thread,
+     * so that any failure is reported in its response without stopping the worker.
+     */
+    private static void runPersistentWorker(List<String> startupArgs) throws IOException {
+        final PrintStream responses = System.out;
+
+        // Anything printed by the generators must not be mixed with the responses
+        System.setOut(System.err);
+
+        final WorkerJson requests = new WorkerJson(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SharedAnalysis analysis = new SharedAnalysis()) {
+            Object request = requests.read();
+            while (request != null) {
+                if (!(request instanceof Map)) {
+                    throw new IOException("Expected a JSON object as work request");
+                }
+
+                final Map<?, ?> requestMap = (Map<?, ?>) request;
+                final Object requestIdValue = requestMap.get("requestId");
+                final long requestId = (requestIdValue instanceof Number)? ((Number) requestIdValue).longValue() : 0;
+                final List<String> args = new ArrayList<>(startupArgs);
+                args.addAll(stringList(requestMap.get("arguments")));
+
+                final StringWriter output = new StringWriter();
+                int exitCode = 0;
+                try {
+                    executor.submit(() -> {
+                        analysis.renewIfOutgrown();
+                        run(args, analysis);
+                        return null;
+                    }).get();
+                }
+                catch (ExecutionException e) {
+                    exitCode = 1;
+                    e.getCause().printStackTrace(new PrintWriter(output));
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                responses.println("{\"exitCode\":" + exitCode + ",\"output\":" + WorkerJson.quote(output.toString()) + ",\"requestId\":" + requestId + '}');
+                responses.flush();
+                request = requests.read();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final List<String> argList = new ArrayList<>(Arrays.asList(args));
+        if (argList.remove(PERSISTENT_WORKER_FLAG)) {
+            runPersistentWorker(argList);
+        }
+        else if (argList.remove(WATCH_FLAG)) {
+            runWatch(argList);
+        }
+        else {
+            try (SharedAnalysis analysis = new SharedAnalysis()) {
+                run(argList, analysis);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package sword.gradle.tasks;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the bytes allocated by all threads in this JVM between {@link #start()} and {@link #stop()}.
+ *
+ * Threads started after the measurement started are polled periodically, as the JVM does not provide
+ * the allocation of threads that already terminated. Then, the allocation of short-lived threads
+ * after their last poll is missed, which makes the result a slight underestimation.
+ */
+final class AllocationSampler {
+
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
+    private final com.sun.management.ThreadMXBean mThreadBean;
+    private final HashMap<Long, Long> mInitialBytes = new HashMap<>();
+    private final HashMap<Long, Long> mLastBytes = new HashMap<>();
+    private Thread mPollingThread;
+    private volatile boolean mStopped;
+
+    AllocationSampler() {
+        mThreadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!mThreadBean.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocation is not measurable in this JVM");
+        }
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private synchronized void poll(boolean initial) {
+        final long[] ids = mThreadBean.getAllThreadIds();
+        final long[] bytes = mThreadBean.getThreadAllocatedBytes(ids);
+        final long pollingThreadId = (mPollingThread != null)? mPollingThread.getId() : -1;
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0 && ids[i] != pollingThreadId) {
+                if (!mInitialBytes.containsKey(ids[i])) {
+                    mInitialBytes.put(ids[i], initial? bytes[i] : 0L);
+                }
+                mLastBytes.put(ids[i], bytes[i]);
+            }
+        }
+    }
+
+    void start() {
+        mInitialBytes.clear();
+        mLastBytes.clear();
+        mStopped = false;
+        mPollingThread = new Thread(() -> {
+            while (!mStopped) {
+                poll(false);
+                try {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "allocation-sampler");
+        mPollingThread.setDaemon(true);
+        poll(true);
+        mPollingThread.start();
+    }
+
+    /**
+     * Stops the measurement and returns the total bytes allocated since it started.
+     */
+    long stop() throws InterruptedException {
+        mStopped = true;
+        mPollingThread.interrupt();
+        mPollingThread.join();
+        poll(false);
+
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : mLastBytes.entrySet()) {
+            total += entry.getValue() - mInitialBytes.get(entry.getKey());
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,288 @@
+package sword.gradle.tasks;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs both tasks through Gradle TestKit on synthetic projects of different sizes, measuring the wall time
+ * and the allocation of each scenario, and comparing them with a stored baseline.
+ *
+ * Wall time is measured on builds run by a TestKit daemon, including up-to-date checks and the snapshotting
+ * of inputs and outputs. Allocation is measured on builds run within this JVM, as it is not observable
+ * in the daemon. Both are the median of the configured number of iterations, after a warm-up build.
+ *
+ * It is configured through the following system properties:
+ * <ul>
+ *   <li>perf.pluginClasspath: Files containing the tasks under test, separated by the path separator. Required.</li>
+ *   <li>perf.gradleHome: Gradle installation to run the builds. If missing, TestKit will find one.</li>
+ *   <li>perf.outputDir: Directory for the synthetic projects and the results.</li>
+ *   <li>perf.baseline: Properties file with the baseline. Results missing there are added to it.</li>
+ *   <li>perf.threshold: Maximum allowed increase over the baseline, as a ratio. 0.25 by default.</li>
+ *   <li>perf.iterations: Number of measured builds for each scenario. 5 by default.</li>
+ *   <li>perf.sizes: Comma separated sizes to run, among small, medium and large. All by default.</li>
+ *   <li>perf.updateBaseline: If true, the baseline is replaced with the current results instead of checked.</li>
+ * </ul>
+ *
+ * The process exits with status 1 if any result exceeds its baseline beyond the threshold.
+ */
+public final class PerformanceSuite {
+
+    private static final String WALL_MILLIS = "wallMillis";
+    private static final String ALLOCATED_BYTES = "allocatedBytes";
+
+    private enum Scenario {
+        CLEAN("clean", TaskOutcome.SUCCESS),
+        NO_CHANGE("noChange", TaskOutcome.UP_TO_DATE),
+        SINGLE_FILE_CHANGE("singleFileChange", TaskOutcome.SUCCESS);
+
+        final String key;
+        final TaskOutcome expectedOutcome;
+
+        Scenario(String key, TaskOutcome expectedOutcome) {
+            this.key = key;
+            this.expectedOutcome = expectedOutcome;
+        }
+    }
+
+    private final List<File> mPluginClasspath;
+    private final File mGradleHome;
+    private final File mOutputDir;
+    private final int mIterations;
+    private int mRevision;
+
+    private PerformanceSuite(List<File> pluginClasspath, File gradleHome, File outputDir, int iterations) {
+        mPluginClasspath = pluginClasspath;
+        mGradleHome = gradleHome;
+        mOutputDir = outputDir;
+        mIterations = iterations;
+    }
+
+    private GradleRunner newRunner(SyntheticProject project, Scenario scenario, boolean inProcess) {
+        final ArrayList<String> arguments = new ArrayList<>();
+        arguments.add(SyntheticProject.LAYOUT_TASK);
+        arguments.add(SyntheticProject.STRING_TASK);
+        if (scenario == Scenario.CLEAN) {
+            arguments.add("--rerun-tasks");
+        }
+
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir(project.getDir())
+                .withTestKitDir(new File(mOutputDir, "testkit"))
+                .withArguments(arguments)
+                .withDebug(inProcess);
+        return (mGradleHome != null)? runner.withGradleInstallation(mGradleHome) : runner;
+    }
+
+    private static void checkOutcome(BuildResult result, String taskName, Scenario scenario) {
+        final BuildTask task = result.task(':' + taskName);
+        final TaskOutcome outcome = (task != null)? task.getOutcome() : null;
+        if (outcome != scenario.expectedOutcome) {
+            throw new IllegalStateException("Task " + taskName + " was expected to be " + scenario.expectedOutcome + " in scenario " + scenario.key + ", but it was " + outcome);
+        }
+    }
+
+    /**
+     * Runs a build for the given scenario, checking that the tasks had the expected outcome.
+     * That is not checked on warm-up builds, as switching between the daemon and this JVM
+     * changes the task implementation, and then tasks are never up to date on the first build.
+     */
+    private void build(SyntheticProject project, Scenario scenario, GradleRunner runner, boolean warmUp) throws IOException {
+        if (scenario == Scenario.SINGLE_FILE_CHANGE) {
+            project.applyChange(mRevision++);
+        }
+
+        final BuildResult result = runner.build();
+        if (!warmUp) {
+            checkOutcome(result, SyntheticProject.LAYOUT_TASK, scenario);
+            checkOutcome(result, SyntheticProject.STRING_TASK, scenario);
+        }
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private void measure(SyntheticProject project, Scenario scenario, Map<String, Long> results) throws IOException, InterruptedException {
+        final GradleRunner daemonRunner = newRunner(project, scenario, false);
+        build(project, scenario, daemonRunner, true);
+        final long[] wallMillis = new long[mIterations];
+        for (int i = 0; i < mIterations; i++) {
+            final long startTime = System.nanoTime();
+            build(project, scenario, daemonRunner, false);
+            wallMillis[i] = (System.nanoTime() - startTime) / 1000000;
+        }
+
+        final GradleRunner inProcessRunner = newRunner(project, scenario, true);
+        final AllocationSampler sampler = new AllocationSampler();
+        build(project, scenario, inProcessRunner, true);
+        final long[] allocatedBytes = new long[mIterations];
+        for (int i = 0; i < mIterations; i++) {
+            sampler.start();
+            build(project, scenario, inProcessRunner, false);
+            allocatedBytes[i] = sampler.stop();
+        }
+
+        final String prefix = project.getSize().key() + '.' + scenario.key + '.';
+        results.put(prefix + WALL_MILLIS, median(wallMillis));
+        results.put(prefix + ALLOCATED_BYTES, median(allocatedBytes));
+    }
+
+    private Map<String, Long> run(List<SyntheticProject.Size> sizes) throws IOException, InterruptedException {
+        final TreeMap<String, Long> results = new TreeMap<>();
+        for (SyntheticProject.Size size : sizes) {
+            final File projectDir = new File(mOutputDir, "projects/" + size.key());
+            final SyntheticProject project = SyntheticProject.generate(projectDir, size, mPluginClasspath);
+            for (Scenario scenario : Scenario.values()) {
+                measure(project, scenario, results);
+                System.out.println(size.key() + '.' + scenario.key + " done");
+            }
+        }
+
+        return results;
+    }
+
+    private static Map<String, Long> readProperties(File file) throws IOException {
+        final TreeMap<String, Long> result = new TreeMap<>();
+        if (file.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream inStream = new FileInputStream(file)) {
+                properties.load(inStream);
+            }
+
+            for (String name : properties.stringPropertyNames()) {
+                result.put(name, Long.parseLong(properties.getProperty(name).trim()));
+            }
+        }
+
+        return result;
+    }
+
+    private static void writeProperties(File file, String comment, Map<String, Long> values) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1))) {
+            writer.println("# " + comment);
+            for (Map.Entry<String, Long> entry : new TreeMap<>(values).entrySet()) {
+                writer.println(entry.getKey() + '=' + entry.getValue());
+            }
+        }
+    }
+
+    private static String describe(String key, long value) {
+        return key.endsWith(ALLOCATED_BYTES)? String.format(Locale.ROOT, "%.1f MiB", value / (1024.0 * 1024.0)) : value + " ms";
+    }
+
+    /**
+     * Compares the results with the baseline, printing all of them, and returns the keys of the ones
+     * exceeding their baseline beyond the threshold.
+     */
+    private static List<String> compare(Map<String, Long> results, Map<String, Long> baseline, double threshold) {
+        final ArrayList<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : results.entrySet()) {
+            final String key = entry.getKey();
+            final long value = entry.getValue();
+            final Long baselineValue = baseline.get(key);
+            if (baselineValue == null) {
+                System.out.println(key + ": " + describe(key, value) + " (no baseline)");
+            }
+            else {
+                final double change = (baselineValue > 0)? (double) (value - baselineValue) / baselineValue : 0.0;
+                final boolean regression = change > threshold;
+                System.out.println(String.format(Locale.ROOT, "%s: %s (baseline %s, %+.1f%%)%s", key, describe(key, value), describe(key, baselineValue), change * 100, regression? " REGRESSION" : ""));
+                if (regression) {
+                    regressions.add(key);
+                }
+            }
+        }
+
+        return regressions;
+    }
+
+    private static List<File> parseClasspath(String value) {
+        final ArrayList<File> files = new ArrayList<>();
+        for (String path : value.split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                files.add(new File(path));
+            }
+        }
+
+        return files;
+    }
+
+    private static List<SyntheticProject.Size> parseSizes(String value) {
+        final ArrayList<SyntheticProject.Size> sizes = new ArrayList<>();
+        for (String name : value.split(",")) {
+            sizes.add(SyntheticProject.Size.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+
+        return sizes;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Builds run within this JVM leave non-daemon threads behind, which would keep it alive
+        Thread.currentThread().setUncaughtExceptionHandler((thread, e) -> {
+            e.printStackTrace();
+            System.exit(2);
+        });
+
+        final String pluginClasspath = System.getProperty("perf.pluginClasspath");
+        if (pluginClasspath == null) {
+            throw new IllegalArgumentException("System property perf.pluginClasspath must be set");
+        }
+
+        final String gradleHome = System.getProperty("perf.gradleHome");
+        final File outputDir = new File(System.getProperty("perf.outputDir", "build/perf"));
+        final File baselineFile = new File(System.getProperty("perf.baseline", "src/perfTest/baseline.properties"));
+        final double threshold = Double.parseDouble(System.getProperty("perf.threshold", "0.25"));
+        final int iterations = Integer.parseInt(System.getProperty("perf.iterations", "5"));
+        final String sizes = System.getProperty("perf.sizes", "small,medium,large");
+        final boolean updateBaseline = Boolean.getBoolean("perf.updateBaseline");
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("At least one iteration is required");
+        }
+
+        final PerformanceSuite suite = new PerformanceSuite(parseClasspath(pluginClasspath), (gradleHome != null)? new File(gradleHome) : null, outputDir, iterations);
+        final Map<String, Long> results = suite.run(parseSizes(sizes));
+        writeProperties(new File(outputDir, "results.properties"), "Performance suite results", results);
+
+        final Map<String, Long> baseline = readProperties(baselineFile);
+        final List<String> regressions = compare(results, baseline, threshold);
+        if (updateBaseline || !baseline.keySet().containsAll(results.keySet())) {
+            final TreeMap<String, Long> newBaseline = new TreeMap<>(baseline);
+            for (Map.Entry<String, Long> entry : results.entrySet()) {
+                if (updateBaseline || !baseline.containsKey(entry.getKey())) {
+                    newBaseline.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            writeProperties(baselineFile, "Performance suite baseline. Values are medians of wall time in milliseconds and allocated bytes", newBaseline);
+            System.out.println("Baseline written to " + baselineFile);
+        }
+
+        if (!updateBaseline && !regressions.isEmpty()) {
+            System.out.println("Regressions beyond " + Math.round(threshold * 100) + "%: " + regressions);
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+}
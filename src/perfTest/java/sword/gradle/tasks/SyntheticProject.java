@@ -0,0 +1,306 @@
+package sword.gradle.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Project generated for the performance suite, containing layouts, strings, a stub SDK,
+ * the compiled interfaces to be matched and a build script registering both tasks.
+ */
+final class SyntheticProject {
+
+    enum Size {
+        SMALL(20, 50, 5),
+        MEDIUM(200, 500, 20),
+        LARGE(1000, 3000, 50);
+
+        final int layoutCount;
+        final int stringCount;
+        final int interfaceCount;
+
+        Size(int layoutCount, int stringCount, int interfaceCount) {
+            this.layoutCount = layoutCount;
+            this.stringCount = stringCount;
+            this.interfaceCount = interfaceCount;
+        }
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    static final String LAYOUT_TASK = "createLayoutWrappers";
+    static final String STRING_TASK = "createStringWrappers";
+
+    private static final String[] STUB_SOURCES = {
+            "android.view.View", "public class View {}",
+            "android.view.ViewGroup", "public class ViewGroup extends View {}",
+            "android.widget.FrameLayout", "public class FrameLayout extends android.view.ViewGroup {}",
+            "android.widget.LinearLayout", "public class LinearLayout extends android.view.ViewGroup {}",
+            "android.widget.TextView", "public class TextView extends android.view.View {}",
+            "android.widget.Button", "public class Button extends TextView {}",
+            "android.widget.ImageView", "public class ImageView extends android.view.View {}"
+    };
+
+    private final File mDir;
+    private final Size mSize;
+
+    private SyntheticProject(File dir, Size size) {
+        mDir = dir;
+        mSize = size;
+    }
+
+    File getDir() {
+        return mDir;
+    }
+
+    Size getSize() {
+        return mSize;
+    }
+
+    private static PrintWriter newWriter(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private static void compile(File outDir, String classpath, List<File> sources) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new UnsupportedOperationException("A JDK is required to compile the synthetic interfaces");
+        }
+
+        outDir.mkdirs();
+        final ArrayList<String> arguments = new ArrayList<>();
+        arguments.add("-nowarn");
+        arguments.add("-source");
+        arguments.add("1.8");
+        arguments.add("-target");
+        arguments.add("1.8");
+        arguments.add("-d");
+        arguments.add(outDir.getPath());
+        if (classpath != null) {
+            arguments.add("-classpath");
+            arguments.add(classpath);
+        }
+
+        for (File source : sources) {
+            arguments.add(source.getPath());
+        }
+
+        if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("Unable to compile sources into " + outDir);
+        }
+    }
+
+    private static File sourceFile(File srcDir, String className) {
+        return new File(srcDir, className.replace('.', File.separatorChar) + ".java");
+    }
+
+    private static void writeSource(File srcDir, String className, String body) throws IOException {
+        final int lastDot = className.lastIndexOf('.');
+        try (PrintWriter writer = newWriter(sourceFile(srcDir, className))) {
+            writer.println("package " + className.substring(0, lastDot) + ';');
+            writer.println();
+            writer.println(body);
+        }
+    }
+
+    private static void addToJar(JarOutputStream jar, File dir, String prefix) throws IOException {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                final String name = prefix + file.getName();
+                if (file.isDirectory()) {
+                    addToJar(jar, file, name + '/');
+                }
+                else {
+                    jar.putNextEntry(new JarEntry(name));
+                    Files.copy(file.toPath(), jar);
+                    jar.closeEntry();
+                }
+            }
+        }
+    }
+
+    private void writeStubSdk() throws IOException {
+        final File srcDir = new File(mDir, "sdk/src");
+        final ArrayList<File> sources = new ArrayList<>();
+        for (int i = 0; i < STUB_SOURCES.length; i += 2) {
+            writeSource(srcDir, STUB_SOURCES[i], STUB_SOURCES[i + 1]);
+            sources.add(sourceFile(srcDir, STUB_SOURCES[i]));
+        }
+
+        final File classesDir = new File(mDir, "sdk/classes");
+        compile(classesDir, null, sources);
+        try (OutputStream outStream = new FileOutputStream(new File(mDir, "android.jar"));
+                JarOutputStream jar = new JarOutputStream(outStream)) {
+            addToJar(jar, classesDir, "");
+        }
+    }
+
+    private void writeInterfaces() throws IOException {
+        final File srcDir = new File(mDir, "interfaces/src");
+        final ArrayList<File> sources = new ArrayList<>();
+        for (int i = 0; i < mSize.interfaceCount; i++) {
+            final String className = "perf.app.ifaces.HasItem" + i;
+            writeSource(srcDir, className, "public interface HasItem" + i + " {\n    android.widget.TextView item" + i + "();\n}");
+            sources.add(sourceFile(srcDir, className));
+        }
+
+        writeSource(srcDir, "perf.app.ifaces.HasTitle", "public interface HasTitle {\n    android.widget.TextView title();\n}");
+        sources.add(sourceFile(srcDir, "perf.app.ifaces.HasTitle"));
+        compile(new File(mDir, "interfaces/classes"), new File(mDir, "android.jar").getPath(), sources);
+    }
+
+    private void writeLayout(File file, int index, boolean variant, String extraViewId) throws IOException {
+        try (PrintWriter writer = newWriter(file)) {
+            writer.println("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"");
+            writer.println("    android:layout_width=\"match_parent\"");
+            writer.println("    android:layout_height=\"match_parent\"");
+            writer.println("    android:orientation=\"vertical\">");
+            writer.println("    <TextView android:id=\"@+id/item" + (index % mSize.interfaceCount) + "\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>");
+            writer.println("    <Button android:id=\"@+id/action" + index + "\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>");
+            if (!variant) {
+                writer.println("    <ImageView android:id=\"@+id/icon\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>");
+            }
+
+            if (extraViewId != null) {
+                writer.println("    <TextView android:id=\"@+id/" + extraViewId + "\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>");
+            }
+
+            if (index % 4 == 0) {
+                writer.println("    <include layout=\"@layout/header\"/>");
+            }
+            writer.println("</LinearLayout>");
+        }
+    }
+
+    private void writeLayouts() throws IOException {
+        final File resDir = new File(mDir, "src/main/res");
+        try (PrintWriter writer = newWriter(new File(resDir, "layout/header.xml"))) {
+            writer.println("<FrameLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"");
+            writer.println("    android:layout_width=\"match_parent\"");
+            writer.println("    android:layout_height=\"wrap_content\">");
+            writer.println("    <TextView android:id=\"@+id/title\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>");
+            writer.println("</FrameLayout>");
+        }
+
+        for (int i = 0; i < mSize.layoutCount; i++) {
+            writeLayout(new File(resDir, "layout/layout_" + i + ".xml"), i, false, null);
+            if (i % 10 == 0) {
+                writeLayout(new File(resDir, "layout-land/layout_" + i + ".xml"), i, true, null);
+            }
+        }
+    }
+
+    private void writeStrings(String changedText) throws IOException {
+        try (PrintWriter writer = newWriter(new File(mDir, "src/main/res/values/strings.xml"))) {
+            writer.println("<resources>");
+            for (int i = 0; i < mSize.stringCount; i++) {
+                final String text = (i == 1 && changedText != null)? changedText : (i % 3 == 0)? "Item %1$s of %2$d" : "Text " + i;
+                writer.println("    <string name=\"string_" + i + "\">" + text + "</string>");
+            }
+            writer.println("</resources>");
+        }
+    }
+
+    private static String quote(File file) {
+        return '\'' + file.getAbsolutePath().replace('\\', '/').replace("'", "\\'") + '\'';
+    }
+
+    private void writeBuildScript(List<File> pluginClasspath) throws IOException {
+        try (PrintWriter writer = newWriter(new File(mDir, "settings.gradle"))) {
+            writer.println("rootProject.name = 'perf-" + mSize.key() + '\'');
+        }
+
+        final StringBuilder classpath = new StringBuilder();
+        for (File file : pluginClasspath) {
+            if (classpath.length() > 0) {
+                classpath.append(", ");
+            }
+            classpath.append(quote(file));
+        }
+
+        try (PrintWriter writer = newWriter(new File(mDir, "build.gradle"))) {
+            writer.println("buildscript {");
+            writer.println("    dependencies {");
+            writer.println("        classpath files(" + classpath + ')');
+            writer.println("    }");
+            writer.println("}");
+            writer.println();
+            writer.println("tasks.register('" + LAYOUT_TASK + "', sword.gradle.tasks.CreateLayoutWrappersTask) {");
+            writer.println("    packageName = 'perf.app.layout'");
+            writer.println("    layoutInterface = 'perf.app.Layout'");
+            writer.println("    androidResourceClass = 'perf.app.R'");
+            writer.println("    ensureNonNullFunction = 'perf.app.Preconditions.ensureNonNull'");
+            writer.println("    bootClassPath = [file('android.jar')]");
+            writer.println("    interfacesClasspath = file('interfaces/classes')");
+            writer.println("    resourcesDir = file('src/main/res')");
+            writer.println("    outputDir = file('build/generated/layouts')");
+            writer.println("    outputCacheMaxSize = 0L");
+            writer.println("}");
+            writer.println();
+            writer.println("tasks.register('" + STRING_TASK + "', sword.gradle.tasks.CreateStringWrappersTask) {");
+            writer.println("    packageName = 'perf.app'");
+            writer.println("    contextInterface = 'perf.app.Ctx'");
+            writer.println("    androidResourceClass = 'perf.app.R'");
+            writer.println("    simpleClassName = 'Strings'");
+            writer.println("    resourceDirs = [file('src/main/res')]");
+            writer.println("    outputDir = file('build/generated/strings')");
+            writer.println("    outputCacheMaxSize = 0L");
+            writer.println("}");
+        }
+    }
+
+    /**
+     * Generates a new project of the given size in the given directory, removing any previous content.
+     * The output cache is disabled in the build script, in order to measure the actual generation.
+     *
+     * @param pluginClasspath Files containing the tasks under test.
+     */
+    static SyntheticProject generate(File dir, Size size, List<File> pluginClasspath) throws IOException {
+        deleteRecursively(dir);
+        final SyntheticProject project = new SyntheticProject(dir, size);
+        project.writeStubSdk();
+        project.writeInterfaces();
+        project.writeLayouts();
+        project.writeStrings(null);
+        project.writeBuildScript(pluginClasspath);
+        return project;
+    }
+
+    /**
+     * Modifies a single layout and the strings file, making both tasks out of date.
+     * Consecutive revisions always result in different contents.
+     */
+    void applyChange(int revision) throws IOException {
+        final File resDir = new File(mDir, "src/main/res");
+        writeLayout(new File(resDir, "layout/layout_0.xml"), 0, false, "changed" + (revision % 2));
+        writeStrings("Changed text " + revision);
+    }
+}
@@ -0,0 +1,175 @@
+package sword.gradle.tasks;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Generates a wrapper with async inflation, compiles it against stub Android classes,
+ * and checks how it delivers the wrapper, or the inflation failure, using direct executors.
+ */
+public final class AsyncInflationTest {
+
+    private static final String[] STUB_SOURCES = {
+            "android.content.Context", "public class Context {}",
+            "android.os.Looper", "public final class Looper { public static Looper getMainLooper() { return null; } }",
+            "android.os.Handler", "public class Handler { public Handler(Looper looper) {} public boolean post(Runnable r) { r.run(); return true; } }",
+            "android.view.ContextThemeWrapper", "public class ContextThemeWrapper extends android.content.Context { public ContextThemeWrapper(android.content.Context base, int themeResId) {} }",
+            "android.view.View", "public class View { public <T extends View> T findViewById(int id) { return null; } public android.content.Context getContext() { return null; } }",
+            "android.view.ViewGroup", "public class ViewGroup extends View { public int getChildCount() { return 0; } public View getChildAt(int index) { return null; } }",
+            "android.view.LayoutInflater", "public class LayoutInflater { private final RuntimeException mFailure; "
+                    + "public LayoutInflater(RuntimeException failure) { mFailure = failure; } "
+                    + "public static LayoutInflater from(android.content.Context context) { return new LayoutInflater(null); } "
+                    + "public View inflate(int resource, ViewGroup root, boolean attachToRoot) { if (mFailure != null) { throw mFailure; } return new android.widget.FrameLayout(); } }",
+            "android.widget.FrameLayout", "public class FrameLayout extends android.view.ViewGroup {}",
+            "androidx.annotation.NonNull", "public @interface NonNull {}",
+            "androidx.annotation.Nullable", "public @interface Nullable {}",
+            "androidx.annotation.StyleRes", "public @interface StyleRes {}",
+            "my.app.Layout", "public interface Layout {}",
+            "my.app.Preconditions", "public final class Preconditions { public static void ensureNonNull(Object value) { if (value == null) { throw new NullPointerException(); } } }",
+            "my.app.R", "public final class R { public static final class layout { public static final int header = 1; } }"
+    };
+
+    @ClassRule
+    public static final TemporaryFolder TEMPORARY_FOLDER = new TemporaryFolder();
+
+    private static ClassLoader sLoader;
+    private static Class<?> sWrapperClass;
+    private static Method sInflateAsync;
+
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.print(content);
+        }
+    }
+
+    private static List<String> javaFiles(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.map(Path::toString).filter(path -> path.endsWith(".java")).collect(Collectors.toList());
+        }
+    }
+
+    @BeforeClass
+    public static void generateAndCompile() throws Exception {
+        final File resourcesDir = TEMPORARY_FOLDER.newFolder("res");
+        writeFile(new File(resourcesDir, "layout/header.xml"), "<FrameLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"/>\n");
+
+        final File outputDir = TEMPORARY_FOLDER.newFolder("gen");
+        final LayoutWrappersGenerator generator = new LayoutWrappersGenerator("my.app.layout", "my.app.Layout", "my.app.R", "my.app.Preconditions.ensureNonNull",
+                Collections.emptyList(), TEMPORARY_FOLDER.newFolder("interfaces"), Collections.singletonList(resourcesDir), outputDir);
+        generator.setAsyncInflation(true);
+        generator.setBootClassPathIndexDir(TEMPORARY_FOLDER.newFolder("index"));
+        generator.setOutputCacheMaxSize(0);
+        generator.generate();
+
+        final File stubsDir = TEMPORARY_FOLDER.newFolder("stubs");
+        for (int i = 0; i < STUB_SOURCES.length; i += 2) {
+            final String className = STUB_SOURCES[i];
+            final int lastDot = className.lastIndexOf('.');
+            writeFile(new File(stubsDir, className.replace('.', File.separatorChar) + ".java"), "package " + className.substring(0, lastDot) + ";\n\n" + STUB_SOURCES[i + 1] + '\n');
+        }
+
+        final File classesDir = TEMPORARY_FOLDER.newFolder("classes");
+        final ArrayList<String> arguments = new ArrayList<>();
+        arguments.add("-nowarn");
+        arguments.add("-d");
+        arguments.add(classesDir.getPath());
+        arguments.addAll(javaFiles(stubsDir));
+        arguments.addAll(javaFiles(outputDir));
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals("Generated wrapper does not compile", 0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+        sLoader = new URLClassLoader(new URL[] {classesDir.toURI().toURL()}, AsyncInflationTest.class.getClassLoader());
+        sWrapperClass = sLoader.loadClass("my.app.layout.HeaderLayout");
+        sInflateAsync = sWrapperClass.getMethod("inflateAsync", sLoader.loadClass("android.view.LayoutInflater"), sLoader.loadClass("android.view.ViewGroup"),
+                Executor.class, Executor.class, sLoader.loadClass("my.app.layout.HeaderLayout$Callback"));
+    }
+
+    private static Object newInflater(RuntimeException failure) throws Exception {
+        return sLoader.loadClass("android.view.LayoutInflater").getConstructor(RuntimeException.class).newInstance(failure);
+    }
+
+    private static Object newCallback(List<Object> delivered, boolean[] inCallbackExecutor) throws ClassNotFoundException {
+        final Class<?> callbackClass = sLoader.loadClass("my.app.layout.HeaderLayout$Callback");
+        return Proxy.newProxyInstance(sLoader, new Class<?>[] {callbackClass}, (proxy, method, args) -> {
+            assertTrue("Callback called out of the callback executor", inCallbackExecutor[0]);
+            delivered.add(args[0]);
+            return null;
+        });
+    }
+
+    @Test
+    public void deliversTypedWrapperThroughCallbackExecutor() throws Exception {
+        final ArrayList<Object> delivered = new ArrayList<>();
+        final boolean[] inCallbackExecutor = new boolean[1];
+        final Executor backgroundExecutor = Runnable::run;
+        final Executor callbackExecutor = command -> {
+            inCallbackExecutor[0] = true;
+            command.run();
+            inCallbackExecutor[0] = false;
+        };
+
+        sInflateAsync.invoke(null, newInflater(null), null, backgroundExecutor, callbackExecutor, newCallback(delivered, inCallbackExecutor));
+
+        assertEquals(1, delivered.size());
+        assertSame(sWrapperClass, delivered.get(0).getClass());
+        final Object view = sWrapperClass.getMethod("view").invoke(delivered.get(0));
+        assertSame(sLoader.loadClass("android.widget.FrameLayout"), view.getClass());
+    }
+
+    @Test
+    public void rethrowsInflationFailureInCallbackExecutor() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("Unable to inflate");
+        final ArrayList<Object> delivered = new ArrayList<>();
+        final ArrayList<IllegalStateException> thrownInCallbackExecutor = new ArrayList<>();
+        final boolean[] inCallbackExecutor = new boolean[1];
+        final Executor backgroundExecutor = Runnable::run;
+        final Executor callbackExecutor = command -> {
+            inCallbackExecutor[0] = true;
+            try {
+                command.run();
+            }
+            catch (IllegalStateException e) {
+                thrownInCallbackExecutor.add(e);
+            }
+            finally {
+                inCallbackExecutor[0] = false;
+            }
+        };
+
+        sInflateAsync.invoke(null, newInflater(failure), null, backgroundExecutor, callbackExecutor, newCallback(delivered, inCallbackExecutor));
+
+        assertEquals(Collections.emptyList(), delivered);
+        assertEquals(1, thrownInCallbackExecutor.size());
+        assertSame(failure, thrownInCallbackExecutor.get(0));
+    }
+}
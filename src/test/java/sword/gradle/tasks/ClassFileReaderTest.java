@@ -0,0 +1,77 @@
+package sword.gradle.tasks;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public final class ClassFileReaderTest {
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    /**
+     * Compiles the given source of a class in package p, and returns the ABI of the resulting class file.
+     */
+    private String abi(String simpleName, String source) throws IOException {
+        final File dir = mTemporaryFolder.newFolder();
+        final File sourceFile = new File(dir, "p/" + simpleName + ".java");
+        sourceFile.getParentFile().mkdirs();
+        Files.write(sourceFile.toPath(), ("package p;\n\n" + source + '\n').getBytes(StandardCharsets.UTF_8));
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", dir.getPath(), sourceFile.getPath()));
+        return ClassFileReader.readAbi(Files.readAllBytes(new File(dir, "p/" + simpleName + ".class").toPath()));
+    }
+
+    @Test
+    public void interfaceAbiListsSupertypesAndNonDefaultMethods() throws IOException {
+        final String abi = abi("HasTitle", "public interface HasTitle extends Runnable {"
+                + " String title(); int count();"
+                + " default String name() { return title(); }"
+                + " static HasTitle none() { return null; }"
+                + " int LIMIT = Integer.getInteger(\"limit\", 3); }");
+        assertEquals("p.HasTitle:java.lang.Object:[java.lang.Runnable]:[count()I, none()Lp/HasTitle;, title()Ljava/lang/String;]", abi);
+    }
+
+    @Test
+    public void classAbiOnlyIncludesSupertypes() throws IOException {
+        final String abi = abi("Panel", "public class Panel extends Thread implements Runnable, Cloneable {"
+                + " private int mCount; public String title() { return null; } }");
+        assertEquals("p.Panel:java.lang.Thread:[java.lang.Runnable, java.lang.Cloneable]", abi);
+    }
+
+    @Test
+    public void abiIgnoresMethodBodiesAndFields() throws IOException {
+        assertEquals(abi("Panel", "public class Panel { public int count() { return 1; } }"),
+                abi("Panel", "public class Panel { private long mTotal; public int count() { return (int) mTotal + 2; } public void reset() { } }"));
+        assertEquals(abi("HasTitle", "public interface HasTitle { String title(); default int size() { return 1; } }"),
+                abi("HasTitle", "public interface HasTitle { String title(); default int size() { return title().length(); } }"));
+    }
+
+    @Test
+    public void abiChangesWithSupertypes() throws IOException {
+        assertNotEquals(abi("Panel", "public class Panel { }"),
+                abi("Panel", "public class Panel implements Runnable { public void run() { } }"));
+        assertNotEquals(abi("HasTitle", "public interface HasTitle { String title(); }"),
+                abi("HasTitle", "public interface HasTitle extends Runnable { String title(); }"));
+    }
+
+    @Test
+    public void abiChangesWithInterfaceGetters() throws IOException {
+        final String original = abi("HasTitle", "public interface HasTitle { String title(); }");
+        assertNotEquals(original, abi("HasTitle", "public interface HasTitle { CharSequence title(); }"));
+        assertNotEquals(original, abi("HasTitle", "public interface HasTitle { String title(); Object icon(); }"));
+        assertNotEquals(original, abi("HasTitle", "public interface HasTitle { String label(); }"));
+    }
+}
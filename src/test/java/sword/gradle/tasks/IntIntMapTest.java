@@ -0,0 +1,112 @@
+package sword.gradle.tasks;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class IntIntMapTest {
+
+    @Test
+    public void emptyMapHasNoKeys() {
+        final IntIntMap map = new IntIntMap();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+        assertEquals(-1, map.indexOfKey(0));
+        assertFalse(map.containsKey(7));
+        assertEquals(-5, map.get(7, -5));
+    }
+
+    @Test
+    public void putKeepsInsertionOrder() {
+        final IntIntMap map = new IntIntMap();
+        map.put(30, 3);
+        map.put(10, 1);
+        map.put(20, 2);
+
+        assertEquals(3, map.size());
+        assertEquals(30, map.keyAt(0));
+        assertEquals(10, map.keyAt(1));
+        assertEquals(20, map.keyAt(2));
+        assertEquals(3, map.valueAt(0));
+        assertEquals(1, map.valueAt(1));
+        assertEquals(2, map.valueAt(2));
+        assertEquals(1, map.indexOfKey(10));
+        assertEquals(2, map.get(20, -1));
+    }
+
+    @Test
+    public void putOnExistingKeyReplacesValueInPlace() {
+        final IntIntMap map = new IntIntMap();
+        map.put(5, 50);
+        map.put(6, 60);
+        map.put(5, 55);
+
+        assertEquals(2, map.size());
+        assertEquals(0, map.indexOfKey(5));
+        assertEquals(55, map.get(5, -1));
+    }
+
+    @Test
+    public void setValueAtChangesOnlyThatEntry() {
+        final IntIntMap map = new IntIntMap();
+        map.put(1, 10);
+        map.put(2, 20);
+        map.setValueAt(1, 21);
+
+        assertEquals(10, map.get(1, -1));
+        assertEquals(21, map.get(2, -1));
+    }
+
+    @Test
+    public void growKeepsAllEntriesAndPositions() {
+        final IntIntMap map = new IntIntMap(4);
+        final int count = 10000;
+        for (int i = 0; i < count; i++) {
+            map.put(i * 7 + 3, i);
+        }
+
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.indexOfKey(i * 7 + 3));
+            assertEquals(i, map.get(i * 7 + 3, -1));
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(-1, map.indexOfKey(i * 7 + 4));
+        }
+    }
+
+    @Test
+    public void keysDifferingOnlyInHighBitsAreFound() {
+        final IntIntMap map = new IntIntMap();
+        final int count = 32767;
+        for (int i = 0; i < count; i++) {
+            map.put(i << 16, i);
+        }
+
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.indexOfKey(i << 16));
+        }
+
+        assertEquals(-1, map.indexOfKey(1));
+        assertEquals(-1, map.indexOfKey((1 << 16) + 1));
+    }
+
+    @Test
+    public void collidingKeysAreKeptApart() {
+        // Same low bits, which would share a slot if the hash only depended on them
+        final IntIntMap map = new IntIntMap(4);
+        final int[] keys = {0, 1 << 8, 1 << 12, 1 << 16, 1 << 20, 1 << 24, 1 << 28, Integer.MAX_VALUE & ~0xFF};
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+
+        assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.indexOfKey(keys[i]));
+        }
+    }
+}